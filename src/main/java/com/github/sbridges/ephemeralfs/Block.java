@@ -0,0 +1,141 @@
+/*
+ * Copyright 2015 Sean Bridges. All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ * 
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ * 
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * 
+ * 
+ */
+
+package com.github.sbridges.ephemeralfs;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A fixed size block of file contents.<P>
+ * 
+ * Blocks can be shared between files after a copy.  A shared block
+ * must not be modified, instead the writer copies the block and 
+ * modifies its own copy.<P>
+ * 
+ * A block can only be shared by a thread holding the read or write lock 
+ * of a {@link FileContents} that references the block, so a block that is 
+ * not shared can safely be modified by the owner of the block while 
+ * holding the owner's write lock.
+ */
+class Block {
+
+    private final ByteBuffer buffer;
+    private final AtomicInteger references = new AtomicInteger(1);
+    
+    Block(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+    
+    ByteBuffer getBuffer() {
+        return buffer;
+    }
+    
+    boolean isShared() {
+        return references.get() > 1;
+    }
+    
+    Block share() {
+        references.incrementAndGet();
+        return this;
+    }
+    
+    /**
+     * @return true if this was the last reference to this block
+     */
+    boolean release() {
+        int remaining = references.decrementAndGet();
+        if(remaining < 0) {
+            throw new IllegalStateException("block released too many times");
+        }
+        return remaining == 0;
+    }
+    
+    /**
+     * Copy length bytes starting at offset into dst.
+     */
+    void read(int offset, ByteBuffer dst, int length) {
+        if(buffer.hasArray()) {
+            dst.put(buffer.array(), buffer.arrayOffset() + offset, length);
+        } else {
+            ByteBuffer view = buffer.duplicate();
+            view.limit(offset + length);
+            view.position(offset);
+            dst.put(view);
+        }
+    }
+    
+    /**
+     * A read only view of length bytes starting at offset.
+     */
+    ByteBuffer view(int offset, int length) {
+        ByteBuffer view = buffer.asReadOnlyBuffer();
+        view.limit(offset + length);
+        view.position(offset);
+        return view;
+    }
+    
+    /**
+     * Copy length bytes from src into this block starting at offset.
+     */
+    void write(ByteBuffer src, int offset, int length) {
+        if(buffer.hasArray()) {
+            src.get(buffer.array(), buffer.arrayOffset() + offset, length);
+        } else {
+            ByteBuffer view = buffer.duplicate();
+            view.position(offset);
+            int srcLimit = src.limit();
+            src.limit(src.position() + length);
+            try {
+                view.put(src);
+            } finally {
+                src.limit(srcLimit);
+            }
+        }
+    }
+    
+    void copyTo(Block other) {
+        ByteBuffer view = buffer.duplicate();
+        view.clear();
+        ByteBuffer otherView = other.buffer.duplicate();
+        otherView.clear();
+        otherView.put(view);
+    }
+    
+    void zero(int from, int to) {
+        if(buffer.hasArray()) {
+            Arrays.fill(buffer.array(), buffer.arrayOffset() + from, buffer.arrayOffset() + to, (byte) 0);
+        } else {
+            for(int i = from; i < to; i++) {
+                buffer.put(i, (byte) 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2015 Sean Bridges. All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ * 
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ * 
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * 
+ * 
+ */
+
+package com.github.sbridges.ephemeralfs;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.file.ClosedFileSystemException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Allocates the blocks used to hold file contents, either on the java heap,
+ * or off heap in direct buffers.<P>
+ * 
+ * Direct buffers are released as soon as the file contents are freed, 
+ * rather than waiting for the garbage collector.
+ */
+class BlockAllocator {
+
+    private static final Cleaner CLEANER = createCleaner();
+    
+    private final boolean offHeap;
+    //contents holding off heap blocks, so we can free
+    //them when the file system is closed
+    private final Set<FileContents> offHeapContents = 
+            Collections.newSetFromMap(new ConcurrentHashMap<FileContents, Boolean>());
+    private volatile boolean closed;
+    
+    public BlockAllocator(boolean offHeap) {
+        this.offHeap = offHeap;
+    }
+
+    public Block allocate(FileContents owner, int size) {
+        if(!offHeap) {
+            return new Block(ByteBuffer.allocate(size));
+        }
+        adopt(owner);
+        return new Block(ByteBuffer.allocateDirect(size));
+    }
+    
+    /**
+     * Called when owner takes a reference to blocks 
+     * shared from another file.
+     */
+    public void adopt(FileContents owner) {
+        if(!offHeap) {
+            return;
+        }
+        if(closed) {
+            throw new ClosedFileSystemException();
+        }
+        offHeapContents.add(owner);
+    }
+    
+    /**
+     * Release owners reference to blocks, the blocks must
+     * not be used by owner after calling this method.  The memory
+     * held by a block is released once no file references it.<P>
+     * 
+     * ownerEmpty should be true if owner no longer holds any blocks.
+     */
+    public void release(FileContents owner, List<Block> blocks, boolean ownerEmpty) {
+        for(Block block : blocks) {
+            release(block);
+        }
+        if(offHeap && ownerEmpty) {
+            offHeapContents.remove(owner);
+        }
+    }
+    
+    /**
+     * Release a reference to a block that is not held by 
+     * any file, such as a block pinned while it is read.
+     */
+    public void release(Block block) {
+        if(block.release() && offHeap) {
+            CLEANER.clean(block.getBuffer());
+        }
+    }
+    
+    public void close() {
+        closed = true;
+        for(FileContents contents : new ArrayList<>(offHeapContents)) {
+            contents.free();
+        }
+    }
+    
+    private static Cleaner createCleaner() {
+        //java 9 and later
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            return new Cleaner(
+                    theUnsafe.get(null), 
+                    unsafeClass.getMethod("invokeCleaner", ByteBuffer.class));
+        } catch(Exception e) {
+            //fall through to the java 7/8 way
+        }
+        //java 7/8
+        try {
+            Method cleanerMethod = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+            Method cleanMethod = Class.forName("sun.misc.Cleaner").getMethod("clean");
+            return new Cleaner(cleanerMethod, cleanMethod);
+        } catch(Exception e) {
+            //we can't free memory ourselves, leave it to the gc
+            return new Cleaner(null, null);
+        }
+    }
+    
+    /**
+     * Frees the memory of a direct buffer using whatever
+     * mechanism the jvm supports
+     */
+    private static final class Cleaner {
+        private final Object target;
+        private final Method method;
+        
+        Cleaner(Object target, Method method) {
+            this.target = target;
+            this.method = method;
+        }
+        
+        void clean(ByteBuffer buffer) {
+            if(method == null || !buffer.isDirect()) {
+                return;
+            }
+            try {
+                if(target instanceof Method) {
+                    //java 7/8, get the cleaner for the buffer, then clean
+                    Object cleaner = ((Method) target).invoke(buffer);
+                    if(cleaner != null) {
+                        method.invoke(cleaner);
+                    }
+                } else {
+                    method.invoke(target, buffer);
+                }
+            } catch(Exception e) {
+                throw new IllegalStateException("failed to free direct buffer", e);
+            }
+        }
+    }
+}
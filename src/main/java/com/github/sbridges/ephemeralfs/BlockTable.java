@@ -0,0 +1,140 @@
+/*
+ * Copyright 2015 Sean Bridges. All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ * 
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ * 
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * 
+ * 
+ */
+
+package com.github.sbridges.ephemeralfs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Maps block indexes to the {@link Block}s of a file.<P>
+ * 
+ * Ranges of a file that have never been written (holes) have no 
+ * block.  Blocks are grouped into pages, and a page is only 
+ * allocated once a block in it is written, so a hole 
+ * uses almost no memory.
+ */
+class BlockTable {
+
+    private static final int PAGE_BITS = 10;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    private static final Block[][] NO_PAGES = new Block[0][];
+    
+    private Block[][] pages = NO_PAGES;
+    private int allocated;
+    
+    /**
+     * The block at index, or null if the block is a hole
+     */
+    Block get(int index) {
+        int page = index >>> PAGE_BITS;
+        if(page >= pages.length || pages[page] == null) {
+            return null;
+        }
+        return pages[page][index & PAGE_MASK];
+    }
+    
+    void set(int index, Block block) {
+        if(block == null) {
+            throw new NullPointerException();
+        }
+        int page = index >>> PAGE_BITS;
+        if(page >= pages.length) {
+            pages = Arrays.copyOf(pages, Math.max(page + 1, pages.length * 2));
+        }
+        if(pages[page] == null) {
+            pages[page] = new Block[PAGE_SIZE];
+        }
+        if(pages[page][index & PAGE_MASK] == null) {
+            allocated++;
+        }
+        pages[page][index & PAGE_MASK] = block;
+    }
+    
+    /**
+     * The number of blocks that are not holes
+     */
+    int getAllocatedCount() {
+        return allocated;
+    }
+    
+    /**
+     * Remove all blocks at or after index, returning the removed blocks
+     */
+    List<Block> removeFrom(int index) {
+        List<Block> answer = new ArrayList<>();
+        int firstPage = index >>> PAGE_BITS;
+        for(int page = firstPage; page < pages.length; page++) {
+            if(pages[page] == null) {
+                continue;
+            }
+            int start = page == firstPage ? index & PAGE_MASK : 0;
+            for(int i = start; i < PAGE_SIZE; i++) {
+                if(pages[page][i] != null) {
+                    answer.add(pages[page][i]);
+                    pages[page][i] = null;
+                }
+            }
+            if(start == 0) {
+                pages[page] = null;
+            }
+        }
+        allocated -= answer.size();
+        int pagesNeeded = (index + PAGE_MASK) >>> PAGE_BITS;
+        if(pagesNeeded == 0) {
+            pages = NO_PAGES;
+        } else if(pagesNeeded < pages.length) {
+            pages = Arrays.copyOf(pages, pagesNeeded);
+        }
+        return answer;
+    }
+    
+    /**
+     * Create a new table sharing all the blocks of this table
+     */
+    BlockTable share() {
+        BlockTable answer = new BlockTable();
+        answer.pages = new Block[pages.length][];
+        for(int page = 0; page < pages.length; page++) {
+            if(pages[page] == null) {
+                continue;
+            }
+            answer.pages[page] = new Block[PAGE_SIZE];
+            for(int i = 0; i < PAGE_SIZE; i++) {
+                if(pages[page][i] != null) {
+                    answer.pages[page][i] = pages[page][i].share();
+                }
+            }
+        }
+        answer.allocated = allocated;
+        return answer;
+    }
+}
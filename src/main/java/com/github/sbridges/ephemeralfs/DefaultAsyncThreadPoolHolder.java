@@ -29,6 +29,7 @@
 
 package com.github.sbridges.ephemeralfs;
 
+import java.lang.reflect.Method;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
@@ -45,6 +46,10 @@ import java.util.concurrent.ThreadFactory;
  * channels. The default thread pool is configured by the system properties
  * defined by the AsynchronousChannelGroup class
  * </pre>
+ * 
+ * If no thread factory is configured, and the jvm supports virtual 
+ * threads (java 21 and later), each task runs in a new virtual thread, 
+ * otherwise a cached pool of daemon threads is used.
  */
 class DefaultAsyncThreadPoolHolder {
     
@@ -85,6 +90,11 @@ class DefaultAsyncThreadPoolHolder {
                 } catch (Exception e) {
                     throw new Error(e);
                 }
+            } else {
+                executor = newVirtualThreadPerTaskExecutor();
+                if(executor != null) {
+                    return executor;
+                }
             }
             
             executor = Executors.newCachedThreadPool(factory);
@@ -92,6 +102,27 @@ class DefaultAsyncThreadPoolHolder {
         }
     }
 
+    /**
+     * Returns null if virtual threads are not supported.<P>
+     * 
+     * We compile against java 7, so look the method up reflectively.
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        Method method;
+        try {
+            method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+        try {
+            return (ExecutorService) method.invoke(null);
+        } catch (Exception e) {
+            //virtual threads are a preview feature in java 19 and 20, 
+            //and fail unless preview features are enabled
+            return null;
+        }
+    }
+
     private static ThreadFactory daemonThreadFactory() {
         return new ThreadFactory() {
             @Override
@@ -41,15 +41,29 @@ import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
 
 /**
- * Implementation of AsynchronousFileChannel, simply wraps a synchronous file channel
+ * Implementation of AsynchronousFileChannel, simply wraps a synchronous file channel.<P>
+ * 
+ * Operations are run by the executor, or if completeInline is set, by
+ * the calling thread.
  */
 class EphemeralFsAsynchronousFileChannel extends AsynchronousFileChannel {
 
+    //how deeply completion handlers can be nested on one thread
+    //before we hand them to the executor
+    private static final int MAX_INLINE_DEPTH = 16;
+    private static final ThreadLocal<int[]> INLINE_DEPTH = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[1];
+        }
+    };
+    
     private final EphemeralFsFileChannel channel;
     private final Executor executor;
+    private final boolean completeInline;
     
     EphemeralFsAsynchronousFileChannel(EphemeralFsFileChannel channel,
-            Executor executor) {
+            Executor executor, boolean completeInline) {
         
         if(channel == null) {
             throw new NullPointerException("channel is null");
@@ -60,6 +74,11 @@ class EphemeralFsAsynchronousFileChannel extends AsynchronousFileChannel {
         
         this.executor = executor;
         this.channel = channel;
+        this.completeInline = completeInline;
+    }
+
+    EphemeralFsFileChannel getChannel() {
+        return channel;
     }
 
     @Override
@@ -96,7 +115,7 @@ class EphemeralFsAsynchronousFileChannel extends AsynchronousFileChannel {
             throw new NullPointerException("handler is null");
         }
         
-        executor.execute(new Runnable() {
+        dispatch(new Runnable() {
             @Override
             public void run() {
                 try
@@ -134,7 +153,7 @@ class EphemeralFsAsynchronousFileChannel extends AsynchronousFileChannel {
             throw new NullPointerException("handler is null");
         }
         
-        executor.execute(new Runnable() {
+        dispatch(new Runnable() {
             @Override
             public void run() {
                 try
@@ -166,7 +185,7 @@ class EphemeralFsAsynchronousFileChannel extends AsynchronousFileChannel {
             throw new NullPointerException("handler is null");
         }
         
-        executor.execute(new Runnable() {
+        dispatch(new Runnable() {
             @Override
             public void run() {
                 try
@@ -190,7 +209,14 @@ class EphemeralFsAsynchronousFileChannel extends AsynchronousFileChannel {
         });
     }
     
-    private <T> Future<T> submit(Callable<T> callable) {
+    <T> Future<T> submit(Callable<T> callable) {
+        if(completeInline) {
+            //our operations are in memory and never block, so 
+            //just run them and return the completed future
+            FutureTask<T> answer = new FutureTask<>(callable);
+            answer.run();
+            return answer;
+        }
         if(executor instanceof ExecutorService) {
             return ((ExecutorService) executor).submit(callable);
         }
@@ -199,4 +225,22 @@ class EphemeralFsAsynchronousFileChannel extends AsynchronousFileChannel {
         executor.execute(answer);
         return answer;
     }
+    
+    void dispatch(Runnable task) {
+        if(completeInline) {
+            //a handler may start another operation from within 
+            //the handler, don't let the stack grow without bound
+            int[] depth = INLINE_DEPTH.get();
+            if(depth[0] < MAX_INLINE_DEPTH) {
+                depth[0]++;
+                try {
+                    task.run();
+                } finally {
+                    depth[0]--;
+                }
+                return;
+            }
+        }
+        executor.execute(task);
+    }
 }
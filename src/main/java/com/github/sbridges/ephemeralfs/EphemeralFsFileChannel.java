@@ -42,13 +42,25 @@ import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
 
 class EphemeralFsFileChannel extends FileChannel {
 
-    private boolean closed;
-    private int position;
+    private static final int TRANSFER_BUFFER_SIZE = 8 * FileContents.BLOCK_SIZE;
+    
+    //guards position, relative reads and writes hold this lock
+    //while they read or write, positional reads and writes don't
+    //
+    //acquire before fc.lock
+    private final Object positionLock = new Object();
+    private volatile boolean closed;
+    private long position;
     private final boolean canRead;
     private final boolean canWrite;
+    //in append mode every write goes to the end of the file,
+    //regardless of position
+    private final boolean append;
     private final FileContents fc;
     private final boolean deleteOnClose;
     private final EphemeralFsFileSystem fs;
@@ -61,6 +73,7 @@ class EphemeralFsFileChannel extends FileChannel {
             FileContents fc, 
             boolean canRead, 
             boolean canWrite, 
+            boolean append,
             boolean deleteOnClose,
             boolean sync,
             ResolvedPath resolvedPath,
@@ -69,6 +82,7 @@ class EphemeralFsFileChannel extends FileChannel {
         this.fc = fc;
         this.canRead = canRead;
         this.canWrite = canWrite;
+        this.append = append;
         this.deleteOnClose = deleteOnClose;
         this.sync = sync;
         this.fs = fs;
@@ -82,27 +96,18 @@ class EphemeralFsFileChannel extends FileChannel {
         
     }
 
+    INode getINode() {
+        return iNode;
+    }
+
     @Override
     public int read(ByteBuffer dst) throws IOException {
-        synchronized(fc.lock) {
-            assertReadable();
-            assertNotClosed(); 
-            if(position >= fc.getSize()) {
-                return -1;
-            }
-            int toRead = Math.min(
-                    dst.remaining(),
-                    fc.getSize() - position
-                    );
-            fc.getContents().position(position);
-            fc.getContents().limit(position + toRead);
-            try {
-                dst.put(fc.getContents());
-                position += toRead;
-            } finally {
-                fc.getContents().limit(fc.getContents().capacity());
+        synchronized(positionLock) {
+            int read = readAt(position, dst);
+            if(read > 0) {
+                position += read;
             }
-            return toRead;
+            return read;
         }
     }
 
@@ -110,15 +115,21 @@ class EphemeralFsFileChannel extends FileChannel {
     @Override
     public long read(ByteBuffer[] dsts, int offset, int length)
             throws IOException {
-        synchronized(fc.lock) {
-            assertNotClosed(); 
-            assertValidIndexes(dsts, offset, length);
-    
-            long total = 0;
-            for(int i = offset; i < offset + length; i++) {
-                total += read(dsts[i]);
+        assertNotClosed(); 
+        assertValidIndexes(dsts, offset, length);
+        synchronized(positionLock) {
+            fc.lock.readLock().lock();
+            try {
+                assertReadable();
+                assertNotClosed(); 
+                long read = fc.read(position, dsts, offset, length);
+                if(read > 0) {
+                    position += read;
+                }
+                return read;
+            } finally {
+                fc.lock.readLock().unlock();
             }
-            return total;
         }
     }
         
@@ -126,29 +137,13 @@ class EphemeralFsFileChannel extends FileChannel {
     @Override
     public int write(ByteBuffer src) throws IOException {
         int answer;
-        synchronized(fc.lock) {
-            assertNotClosed();
-            assertWritable();
-            ensureCapacity(position + (long) src.remaining());
-            
-            int toWrite = src.remaining();
-            int newPosition = position + toWrite;
-            fc.getContents().position(position);
-            try {
-                fc.getContents().limit(fc.getContents().capacity());
-                fc.setSize(Math.max(fc.getSize(), newPosition));
-                //reset limit
-            } finally {
-                fc.getContents().limit(fc.getContents().capacity());
+        synchronized(positionLock) {
+            if(append) {
+                answer = (int) writeAtEnd(new ByteBuffer[] {src}, 0, 1);
+            } else {
+                answer = writeAt(position, src);
+                position += answer;
             }
-            fc.getContents().put(src);
-            position = newPosition;
-            //don't just use positions, as
-            //we may not have written at the end 
-            //of the file...
-            
-            answer = toWrite;
-            markDirty();
         }
         notifyModified();
         return answer;
@@ -157,22 +152,36 @@ class EphemeralFsFileChannel extends FileChannel {
     @Override
     public long write(ByteBuffer[] srcs, int offset, int length)
             throws IOException {
-        synchronized(fc.lock) {
-            assertNotClosed(); 
-            assertValidIndexes(srcs, offset, length);
-    
-            long total = 0;
-            for(int i = offset; i < offset + length; i++) {
-                total += write(srcs[i]);
+        assertNotClosed(); 
+        assertValidIndexes(srcs, offset, length);
+        long answer;
+        synchronized(positionLock) {
+            if(append) {
+                answer = writeAtEnd(srcs, offset, length);
+            } else {
+                fc.lock.writeLock().lock();
+                try {
+                    assertNotClosed();
+                    assertWritable();
+                    answer = fc.write(position, srcs, offset, length);
+                    position += answer;
+                    markDirty();
+                } finally {
+                    fc.lock.writeLock().unlock();
+                }
             }
-            return total;
         }
+        notifyModified();
+        return answer;
     }
 
     @Override
     public long position() throws IOException {
-        synchronized(fc.lock) { 
+        synchronized(positionLock) { 
             assertNotClosed();
+            if(append) {
+                return fc.getSize();
+            }
             return position;
         }
         
@@ -182,47 +191,41 @@ class EphemeralFsFileChannel extends FileChannel {
     @Override
     public FileChannel position(long newPosition)
             throws IOException {
-        synchronized(fc.lock) {
+        synchronized(positionLock) {
             assertNotClosed();
-            if(position < 0) {
+            if(newPosition < 0) {
                 throw new IllegalArgumentException("position must be > 0, not:" + newPosition);
             }
-            if(newPosition > Integer.MAX_VALUE) {
-                throw new IOException("position > max file length");
-            }
-            this.position = (int) newPosition;
+            this.position = newPosition;
             return this;
         }
     }
 
     @Override
     public long size() throws IOException {
-        synchronized(fc.lock) {
-            assertNotClosed();
-            return fc.getSize();
-        }
+        assertNotClosed();
+        return fc.getSize();
     }
 
     @Override
     public FileChannel truncate(long newSize) throws IOException {
-        synchronized(fc.lock) {
-            assertNotClosed();
-            assertWritable();
-            if(newSize < 0) {
-                throw new IllegalArgumentException("size must be > 0, not:" + newSize);
-            }
-            if(newSize > Integer.MAX_VALUE) {
-                throw new IOException("max file size exceeded");
-            }
-            if(newSize >= fc.getSize()) { 
-                return this;
-            }
-            fc.setSize((int) newSize);
-            if(fc.getContents().capacity() > 2 * FileContents.INITIAL_BUFFER_SIZE) {
-                fc.createNewBuffer(FileContents.INITIAL_BUFFER_SIZE, true);
+        synchronized(positionLock) {
+            fc.lock.writeLock().lock();
+            try {
+                assertNotClosed();
+                assertWritable();
+                if(newSize < 0) {
+                    throw new IllegalArgumentException("size must be > 0, not:" + newSize);
+                }
+                if(newSize >= fc.getSize()) { 
+                    return this;
+                }
+                fc.truncate(newSize);
+                position = Math.min(position, newSize);
+                markDirty();
+            } finally {
+                fc.lock.writeLock().unlock();
             }
-            position = Math.min(position, fc.getSize());
-            markDirty();
         }
         notifyModified();
         return this;
@@ -252,23 +255,47 @@ class EphemeralFsFileChannel extends FileChannel {
             throw new IllegalArgumentException();
         }
         
-        if(count > Integer.MAX_VALUE) {
-            count = Integer.MAX_VALUE;
-        }
+        assertNotClosed();
+        assertReadable();
         
-        //we don't want a reference to our internal buffer escaping
-        //so use a temporary buffer to do the actual read
-        ByteBuffer tempBuf = ByteBuffer.allocate((int) count);
-        synchronized(fc.lock) {
-            
-            int read = read(tempBuf, position);
-            if(read <= 0) {
-                return 0;
+        //only transfer what is here now, if target appends to 
+        //this file we would otherwise never catch up
+        count = Math.min(count, Math.max(0, size() - position));
+        
+        //write read only views of our blocks directly to the target
+        //a block at a time, without holding the lock while 
+        //we call the target
+        long transferred = 0;
+        ByteBuffer copy = null;
+        while(transferred < count) {
+            FileContents.View view = viewAt(position + transferred, count - transferred);
+            if(view == null) {
+                break;
+            }
+            try {
+                ByteBuffer buffer = view.getBuffer();
+                if(buffer.isDirect()) {
+                    //off heap blocks are freed once released, target
+                    //may keep what we give it, so give it a copy
+                    if(copy == null) {
+                        copy = ByteBuffer.allocate((int) Math.min(count, FileContents.BLOCK_SIZE));
+                    }
+                    copy.clear();
+                    copy.put(buffer);
+                    copy.flip();
+                    buffer = copy;
+                }
+                int length = buffer.remaining();
+                int written = target.write(buffer);
+                transferred += written;
+                if(written < length) {
+                    break;
+                }
+            } finally {
+                fc.release(view);
             }
         }
-        
-        tempBuf.flip();
-        return target.write(tempBuf);
+        return transferred;
     }
 
     @Override
@@ -286,59 +313,147 @@ class EphemeralFsFileChannel extends FileChannel {
             throw new IllegalArgumentException();
         }
         
-        if(count > Integer.MAX_VALUE) {
-            count = Integer.MAX_VALUE;
-        }
-
-        //we don't want a reference to our internal buffer escaping
-        //so use a temporary buffer to do the actual read
-        ByteBuffer tempBuf = ByteBuffer.allocate((int) count);
-        int read = src.read(tempBuf);
-        if(read <= 0) {
+        assertNotClosed();
+        assertWritable();
+        if(position > size()) {
             return 0;
         }
         
-        tempBuf.flip();
-        
-        //we don't want to call an external method while holding the lock
-        //so don't acquire it until here
-        long answer;
-        synchronized(fc.lock) {
-            if(position > size()) {
-                return 0;
+        long transferred;
+        if(src instanceof EphemeralFsFileChannel) {
+            transferred = transferFrom((EphemeralFsFileChannel) src, position, count);
+        } else {
+            transferred = transferFromArbitraryChannel(src, position, count);
+        }
+        if(transferred > 0) {
+            notifyModified();
+        }
+        return transferred;
+    }
+    
+    /**
+     * Copy directly from the blocks of src into our blocks.
+     */
+    private long transferFrom(EphemeralFsFileChannel src, long position,
+            long count) throws IOException {
+        synchronized(src.positionLock) {
+            //only transfer what src holds now, src may be this file
+            count = Math.min(count, Math.max(0, src.size() - src.position));
+            long transferred = 0;
+            while(transferred < count) {
+                FileContents.View view = src.viewAt(src.position, count - transferred);
+                if(view == null) {
+                    break;
+                }
+                try {
+                    int written = writeAt(position + transferred, view.getBuffer());
+                    transferred += written;
+                    src.position += written;
+                } finally {
+                    src.fc.release(view);
+                }
             }
-            answer = write(tempBuf, position);                
+            return transferred;
         }
-        return answer;
+    }
+
+    private long transferFromArbitraryChannel(ReadableByteChannel src, long position,
+            long count) throws IOException {
+        //read in bounded chunks, so we don't allocate count bytes 
+        //when src holds much less than count
+        ByteBuffer tempBuf = ByteBuffer.allocate((int) Math.min(count, TRANSFER_BUFFER_SIZE));
+        long transferred = 0;
+        while(transferred < count) {
+            tempBuf.clear();
+            tempBuf.limit((int) Math.min(tempBuf.capacity(), count - transferred));
+            int read = src.read(tempBuf);
+            if(read <= 0) {
+                break;
+            }
+            tempBuf.flip();
+            transferred += writeAt(position + transferred, tempBuf);
+        }
+        return transferred;
     }
 
     @Override
     public int read(ByteBuffer dst, long position) throws IOException {
-        synchronized(fc.lock) {
-            assertNotClosed(); 
-            long startPosition = position();
-            try
-            {
-                position(position);
-                return read(dst);
-            } finally {
-                position(startPosition);
-            }
+        assertNotClosed(); 
+        if(position < 0) {
+            throw new IllegalArgumentException("position must be > 0, not:" + position);
         }
+        return readAt(position, dst);
     }
 
     @Override
     public int write(ByteBuffer src, long position) throws IOException {
-        synchronized(fc.lock) {
+        assertNotClosed(); 
+        if(position < 0) {
+            throw new IllegalArgumentException("position must be > 0, not:" + position);
+        }
+        int answer = writeAt(position, src);
+        notifyModified();
+        return answer;
+    }
+    
+    /**
+     * Reads only need the read lock, so reads from many 
+     * threads can proceed in parallel
+     */
+    private int readAt(long position, ByteBuffer dst) throws IOException {
+        fc.lock.readLock().lock();
+        try {
+            assertReadable();
             assertNotClosed(); 
-            long startPosition = position();
-            try
-            {
-                position(position);
-                return write(src);
-            } finally {
-                position(startPosition);
-            }
+            return fc.read(position, dst);
+        } finally {
+            fc.lock.readLock().unlock();
+        }
+    }
+    
+    private FileContents.View viewAt(long position, long maxLength) throws IOException {
+        fc.lock.readLock().lock();
+        try {
+            assertReadable();
+            assertNotClosed(); 
+            return fc.view(position, maxLength);
+        } finally {
+            fc.lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Write srcs at the end of the file.  Finding the end of the
+     * file and writing are done under the same write lock, so 
+     * concurrent appends from different channels never overlap.<P>
+     * 
+     * Must be called while holding positionLock.
+     */
+    private long writeAtEnd(ByteBuffer[] srcs, int offset, int length) throws IOException {
+        fc.lock.writeLock().lock();
+        try {
+            assertNotClosed();
+            assertWritable();
+            long start = fc.getSize();
+            long answer = fc.write(start, srcs, offset, length);
+            position = start + answer;
+            markDirty();
+            return answer;
+        } finally {
+            fc.lock.writeLock().unlock();
+        }
+    }
+    
+    private int writeAt(long position, ByteBuffer src) throws IOException {
+        fc.lock.writeLock().lock();
+        try {
+            assertNotClosed();
+            assertWritable();
+            int answer = fc.write(position, src);
+            markDirty();
+            return answer;
+        } finally {
+            fc.lock.writeLock().unlock();
         }
     }
 
@@ -364,28 +479,74 @@ class EphemeralFsFileChannel extends FileChannel {
     }
     
     FileLock tryLock(Channel actualChannel, long position, long size, boolean shared) throws IOException {
-        synchronized(fc.lock) {
+        fc.lock.writeLock().lock();
+        try {
             assertNotClosed(); 
             assertWritable();
             return fc.tryLock(actualChannel, position, size, shared);
+        } finally {
+            fc.lock.writeLock().unlock();
         }
     }
     
     @Override
     protected void implCloseChannel() throws IOException {
-        synchronized(fc.lock) {
+        //wait for any reads or writes in progress to finish
+        fc.lock.writeLock().lock();
+        try {
             if(closed) {
                 return;
             }
             closed = true;
+        } finally {
+            fc.lock.writeLock().unlock();
         }
         fs.getLimits().releaseFileHandle();
         if(deleteOnClose) {
             Files.delete(path);
         }
         closeTracker.onClose();
-        synchronized(fs.fsLock) {
-            iNode.removeOpenFileHandle();
+        iNode.removeOpenFileHandle();
+    }
+    
+    /**
+     * Perform a batch of operations on this file, holding the
+     * lock once for all of them.  Each operation records its own result.
+     */
+    void perform(List<EphemeralFsIoBatch.Operation> operations) {
+        boolean anyWrites = false;
+        for(EphemeralFsIoBatch.Operation operation : operations) {
+            anyWrites |= operation.isWrite();
+        }
+        Lock lock = anyWrites ? fc.lock.writeLock() : fc.lock.readLock();
+        boolean modified = false;
+        lock.lock();
+        try {
+            for(EphemeralFsIoBatch.Operation operation : operations) {
+                try {
+                    assertNotClosed();
+                    if(operation.isWrite()) {
+                        assertWritable();
+                        operation.completed(fc.write(operation.getPosition(), operation.getBuffer()));
+                        markDirty();
+                        modified = true;
+                    } else {
+                        assertReadable();
+                        operation.completed(fc.read(operation.getPosition(), operation.getBuffer()));
+                    }
+                } catch(IOException | RuntimeException e) {
+                    operation.failed(e);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        if(modified) {
+            try {
+                notifyModified();
+            } catch (NoSuchFileException e) {
+                //the data was written, so don't fail the writes
+            }
         }
     }
     
@@ -418,37 +579,25 @@ class EphemeralFsFileChannel extends FileChannel {
         }
     }
     
-    private void ensureCapacity(long newSize) throws IOException { //NOPMD
-        if(newSize > Integer.MAX_VALUE) {
-            throw new IOException("max file size is" + Integer.MAX_VALUE);
+    private void notifyModified() throws NoSuchFileException {
+        //times and the archive flag are safe to update without the 
+        //file system lock, so writes to different files don't contend
+        iNode.getProperties().getFileTimes().setLastModifiedTime(System.currentTimeMillis());
+        
+        if(fs.getSettings().isWindows() && !iNode.getProperties().getDosIsArchive()) {
+            iNode.getProperties().setDosIsArchive(true);
         }
-        if(fc.getContents().capacity() >= newSize) { 
+        
+        //finding who to notify requires resolving our path, which needs
+        //the file system lock, skip that if no directory we are in is watched
+        if(!iNode.hasWatchedParent()) {
             return;
         }
-        long newCapacity = Math.max(fc.getContents().capacity() * 2, newSize); 
-        if(newCapacity > Integer.MAX_VALUE) {
-            newCapacity = Integer.MAX_VALUE;
-        }
-        fc.createNewBuffer(
-                (int) newCapacity, 
-                true);
-    }
-
-    
-    private void notifyModified() throws NoSuchFileException {
-
-        synchronized(fs.fsLock) {
-            iNode.getProperties().getFileTimes().setLastModifiedTime(System.currentTimeMillis());
-            
-            if(fs.getSettings().isWindows()) {
-                iNode.getProperties().setDosIsArchive(true);
-            }
-            
-            //notify twice?  once for meta data once for contents?
-            iNode.notifyChange(path);
-            iNode.notifyChange(path);
-            
-        }
+        
+        //notify twice?  once for meta data once for contents?
+        iNode.notifyChange(path);
+        iNode.notifyChange(path);
+        
     }
     
     private void markDirty() {
@@ -30,9 +30,7 @@
 package com.github.sbridges.ephemeralfs;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
 import java.nio.channels.AsynchronousFileChannel;
-import java.nio.channels.SeekableByteChannel;
 import java.nio.file.AccessDeniedException;
 import java.nio.file.AccessMode;
 import java.nio.file.CopyOption;
@@ -63,23 +61,47 @@ import java.nio.file.spi.FileSystemProvider;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.regex.Pattern;
 
 class EphemeralFsFileSystem extends FileSystem {
 
     //lock protecting this file system
-    //all file system directory and meta data
-    //operations must hold this lock
+    //anything that changes the namespace or 
+    //meta data holds the read lock, and the
+    //directory lock of each directory it changes,
+    //see lockDirectories()
+    //
+    //lookups and stats do not lock, directory
+    //children and file properties are safe to read
+    //concurrently with a writer, readers see the 
+    //namespace either before or after each change.
+    //the write lock is for callers that need
+    //the file system to not change at all
+    //
+    //the lock is not upgradable, never ask for
+    //the write lock while holding the read lock
     //
     //reads/writes to streams on individual
     //files are not protected by this lock
-    final Object fsLock = new Object();
+    final ReentrantReadWriteLock fsLock = new ReentrantReadWriteLock();
+    
+    //held while locking more than one directory, 
+    //only a move of a directory to another directory
+    //changes which directories contain which, it holds
+    //the write lock so that the lock order 
+    //stays the same while anyone else locks directories
+    //and so no other move can make the directory 
+    //being moved a parent of its target
+    private final ReentrantReadWriteLock renameLock = new ReentrantReadWriteLock();
     
     private final Settings settings;
     private final String name;
@@ -91,8 +113,10 @@ class EphemeralFsFileSystem extends FileSystem {
     private final UserPrincipalLookupService userPrincipalLookupService = 
             new EphemeralFsUserPrincipalLookupService();
     private final WatchRegistry watchRegistry = new WatchRegistry();
+    private final ResolvedPathCache resolvedPathCache = new ResolvedPathCache();
     private final EphemeralFsFileStore fileStore = new EphemeralFsFileStore(this);
     private final Limits limits;
+    private final BlockAllocator blockAllocator;
     private final AttributeLookup attributes;
     
     public AttributeLookup getAttributes() {
@@ -104,6 +128,10 @@ class EphemeralFsFileSystem extends FileSystem {
     public WatchRegistry getWatchRegistry() {
         return watchRegistry;
     }
+    
+    ResolvedPathCache getResolvedPathCache() {
+        return resolvedPathCache;
+    }
 
     public void closed(CloseTracker tracker) {
         notClosed.remove(tracker);
@@ -119,8 +147,9 @@ class EphemeralFsFileSystem extends FileSystem {
         this.name = name;
         this.settings = settings;
         this.provider = provider;
-        this.root = INode.createRoot(this);
         this.limits = new Limits(settings);
+        this.blockAllocator = new BlockAllocator(settings.storeContentsOffHeap());
+        this.root = INode.createRoot(this);
         
         if(settings.isWindows()) {
             attributes = new AttributeLookup(
@@ -149,6 +178,7 @@ class EphemeralFsFileSystem extends FileSystem {
         provider.closing(this);
         asyncThreadPoolHolder.close();
         closed = true;
+        blockAllocator.close();
     }
 
     @Override
@@ -244,7 +274,10 @@ class EphemeralFsFileSystem extends FileSystem {
             executor = asyncThreadPoolHolder.getThreadPool();
         }
         EphemeralFsFileChannel channel = newByteChannel(efsPath, options, attrs);
-        return new EphemeralFsAsynchronousFileChannel(channel, executor);
+        return new EphemeralFsAsynchronousFileChannel(
+                channel, 
+                executor, 
+                settings.completeAsyncOperationsInline());
     }
     
     EphemeralFsFileChannel newByteChannel(EphemeralFsPath path,
@@ -259,83 +292,119 @@ class EphemeralFsFileSystem extends FileSystem {
             }
         }
         
-        synchronized(fsLock) {
-            
-            if(!isOpen()) {
-                throw new FileSystemException("closed");
+        EphemeralFsFileChannel answer;
+        fsLock.readLock().lock();
+        try {
+            answer = newByteChannelInDirectory(path, options, attrs);
+        } finally {
+            fsLock.readLock().unlock();
+        }
+        
+        //in unix, delete on close is implemented as delete on
+        //open, the delete locks its own directory
+        if(settings.isPosix() && 
+           options.contains(StandardOpenOption.DELETE_ON_CLOSE) &&
+           !answer.getINode().isDir()) {
+            try {
+                delete(path);
+            } catch(NoSuchFileException e) {
+                //someone else deleted it first
             }
-            
-            
-            boolean noFollow = options.contains(LinkOption.NOFOLLOW_LINKS);
-            
+        }
+        return answer;
+    }
+    
+    /**
+     * Open or create the file, while holding the file system read lock.  
+     * Creating a file only locks the directory it is created in.
+     */
+    private EphemeralFsFileChannel newByteChannelInDirectory(EphemeralFsPath path,
+            Set<? extends OpenOption> options, FileAttribute<?>... attrs)
+            throws IOException {
+        
+        if(!isOpen()) {
+            throw new FileSystemException("closed");
+        }
+        
+        boolean noFollow = options.contains(LinkOption.NOFOLLOW_LINKS);
+        
+        //don't delete on close if we are posix, instead we delete before returning
+        boolean deleteOnClose = !settings.isPosix() && options.contains(StandardOpenOption.DELETE_ON_CLOSE);
+        
+        while(true) {
             ResolvedPath resolvedPath = ResolvedPath.resolve(path, noFollow);
             
             if(resolvedPath.resolvedToSymbolicLink() && noFollow) {
                 throw new IOException("Too many levels of symbolic links (NOFOLLOW_LINKS specified)");
             }
-
-            //don't delete on close if we are posix, instead we delete before returning
-            boolean deleteOnClose = !settings.isPosix() && options.contains(StandardOpenOption.DELETE_ON_CLOSE);
-            //in unix, delete on close is implemented as delete on
-            //open
-            boolean deleteOnOpen = settings.isPosix() && options.contains(StandardOpenOption.DELETE_ON_CLOSE);
-            
-            
             
             if(resolvedPath.hasTarget()) { 
                 limits.tryAcquireFileHandle();
-                EphemeralFsFileChannel answer = resolvedPath.getTarget().newFileChannel(
+                return resolvedPath.getTarget().newFileChannel(
                         options, deleteOnClose, resolvedPath);
-
-                if(deleteOnOpen && !resolvedPath.getTarget().isDir()) {
-                    delete(path);
-                }
-                return answer;
             }
             
-            if(options.contains(StandardOpenOption.CREATE) ||
-               options.contains(StandardOpenOption.CREATE_NEW)) {
-                
-                //CREATE and CREATE_NEW are ignored if
-                //WRITE is not set
-                if(!options.contains(StandardOpenOption.WRITE)) {
-                    throw new NoSuchFileException(path.toString());
-                }
-                if(!resolvedPath.hasValidParent()) {
-                    throw new NoSuchFileException(path.toString());
-                }
-
+            if(!options.contains(StandardOpenOption.CREATE) &&
+               !options.contains(StandardOpenOption.CREATE_NEW)) {
+                throw new NoSuchFileException(path.toString());
+            }
                 
-                //if we have a file system like
-                //   /a (a file)
-                //   /b (link -> a)
-                //  
-                //  when we do Files.write(b) we actually write to a
-                //  if we do Files.create(b) we fail since
-                //  b already exists, we can tell the difference
-                //  between the two using the CREATE_NEW setting
-                //
-                EphemeralFsPath realPath;
-                if(options.contains(StandardOpenOption.CREATE_NEW)) {
-                    ResolvedPath resolvedForCreate = ResolvedPath.resolve(path, true);
-                    realPath = resolvedForCreate.getPath();
-                } else {
-                    realPath = resolvedPath.getPath();
-                }
+            //CREATE and CREATE_NEW are ignored if
+            //WRITE is not set
+            if(!options.contains(StandardOpenOption.WRITE)) {
+                throw new NoSuchFileException(path.toString());
+            }
+            if(!resolvedPath.hasValidParent()) {
+                throw new NoSuchFileException(path.toString());
+            }
 
-                if(realPath.getParent() == null) {
-                    throw new IOException("No Parent");
+            
+            //if we have a file system like
+            //   /a (a file)
+            //   /b (link -> a)
+            //  
+            //  when we do Files.write(b) we actually write to a
+            //  if we do Files.create(b) we fail since
+            //  b already exists, we can tell the difference
+            //  between the two using the CREATE_NEW setting
+            //
+            ResolvedPath resolvedForCreate;
+            if(options.contains(StandardOpenOption.CREATE_NEW)) {
+                resolvedForCreate = ResolvedPath.resolve(path, true);
+                if(!resolvedForCreate.hasValidParent()) {
+                    //changed since we resolved it, try again
+                    continue;
                 }
-                if(realPath.getFileName().toString().equals("..") ||
-                        realPath.getFileName().toString().equals(".")) {
-                    throw new IOException("invalid path:" + realPath);
+                if(resolvedForCreate.resolvedToSymbolicLink()) {
+                    //a dangling link, create new won't create what it links to
+                    throw new FileAlreadyExistsException(path.toString());
                 }
-                
-                INode parent = resolvedPath.getParent();
+            } else {
+                resolvedForCreate = resolvedPath;
+            }
+            EphemeralFsPath realPath = resolvedForCreate.getPath();
 
-                
-                if(!parent.isDir()) {
-                    throw new IOException("not a directory");
+            if(realPath.getParent() == null) {
+                throw new IOException("No Parent");
+            }
+            if(realPath.getFileName().toString().equals("..") ||
+                    realPath.getFileName().toString().equals(".")) {
+                throw new IOException("invalid path:" + realPath);
+            }
+            
+            INode parent = resolvedForCreate.getParent();
+
+            
+            if(!parent.isDir()) {
+                throw new IOException("not a directory");
+            }
+            
+            lockDirectory(parent, path);
+            try {
+                //someone may have created the file since we resolved it, 
+                //if so, open what they created
+                if(ResolvedPath.resolve(path, noFollow).hasTarget()) {
+                    continue;
                 }
                 //acquire a file handle before we create the directory entry
                 limits.tryAcquireFileHandle();
@@ -344,56 +413,109 @@ class EphemeralFsFileSystem extends FileSystem {
                 openOptionsCopy.remove(StandardOpenOption.CREATE);
                 openOptionsCopy.remove(StandardOpenOption.CREATE_NEW);
                 
-                EphemeralFsFileChannel answer = child.newFileChannel(openOptionsCopy, deleteOnClose, ResolvedPath.resolve(realPath, false));
-                //in unix, delete on close is implemented as delete on
-                //open
-                if(deleteOnOpen) {
-                    delete(path);
-                }
-                return answer;
+                //don't resolve realPath again, a directory above parent 
+                //may have been moved since we resolved it
+                return child.newFileChannel(openOptionsCopy, deleteOnClose, resolvedForCreate.withTarget(child));
+            } finally {
+                parent.unlockDirectory();
             }
-            
+        }
+    }
+    
+    /**
+     * Lock dir to add or remove its entries, the caller must hold
+     * the file system read lock.  Fails if dir was deleted after 
+     * it was resolved.
+     */
+    private void lockDirectory(INode dir, EphemeralFsPath path) throws NoSuchFileException {
+        dir.lockDirectory();
+        if(!dir.exists()) {
+            dir.unlockDirectory();
             throw new NoSuchFileException(path.toString());
-            
         }
     }
     
-    void checkAccess(EphemeralFsPath path, AccessMode... modes) throws IOException {
-        synchronized(fsLock) {
-            ResolvedPath resolved = ResolvedPath.resolve(path, false);
-            if(!resolved.hasTarget()) {
-                throw new NoSuchFileException("Could not find:"  + path);
+    /**
+     * Lock several directories to add or remove their entries, the caller 
+     * must hold the file system read lock and the rename lock.<P>
+     * 
+     * Directories are always locked in the same order, a directory 
+     * before any directory it contains, and otherwise by inode number.  
+     * Directories only change which directories they are in while 
+     * the rename write lock is held, so the order can't change
+     * while we lock.<P>
+     * 
+     * Nulls are ignored, each directory is locked once.  The caller
+     * must check that the directories still exist.
+     */
+    private static List<INode> lockDirectories(INode... dirs) {
+        List<INode> answer = new ArrayList<>(dirs.length);
+        for(INode dir : dirs) {
+            if(dir != null && !answer.contains(dir)) {
+                answer.add(dir);
             }
-            
-            for(AccessMode m : modes) {
-                switch(m) {
-                case READ :
-                    if(!resolved.getTarget().canRead()) {
-                        throw new AccessDeniedException(path.toString());
-                    } 
-                    break;
-                case WRITE :
-                    if(!resolved.getTarget().canWrite()) {
-                        throw new AccessDeniedException(path.toString());
-                    } 
-                    break;
-                case EXECUTE :
-                    if(!resolved.getTarget().canExecute()) {
-                        throw new AccessDeniedException(path.toString());
-                    } 
-                    break;  
-                default :
-                    throw new IllegalStateException();
-                }
+        }
+        Collections.sort(answer, LOCK_ORDER);
+        for(INode dir : answer) {
+            dir.lockDirectory();
+        }
+        return answer;
+    }
+    
+    private static void unlockDirectories(List<INode> dirs) {
+        for(int i = dirs.size() - 1; i >= 0; i--) {
+            dirs.get(i).unlockDirectory();
+        }
+    }
+    
+    private static final Comparator<INode> LOCK_ORDER = new Comparator<INode>() {
+        @Override
+        public int compare(INode o1, INode o2) {
+            //a directory is always shallower than anything it contains
+            int answer = Integer.compare(o1.getDepth(), o2.getDepth());
+            if(answer != 0) {
+                return answer;
+            }
+            return o1.getProperties().getiNodeNumber().compareTo(
+                    o2.getProperties().getiNodeNumber());
+        }
+    };
+    
+    void checkAccess(EphemeralFsPath path, AccessMode... modes) throws IOException {
+        ResolvedPath resolved = ResolvedPath.resolve(path, false);
+        if(!resolved.hasTarget()) {
+            throw new NoSuchFileException("Could not find:"  + path);
+        }
+        
+        for(AccessMode m : modes) {
+            switch(m) {
+            case READ :
+                if(!resolved.getTarget().canRead()) {
+                    throw new AccessDeniedException(path.toString());
+                } 
+                break;
+            case WRITE :
+                if(!resolved.getTarget().canWrite()) {
+                    throw new AccessDeniedException(path.toString());
+                } 
+                break;
+            case EXECUTE :
+                if(!resolved.getTarget().canExecute()) {
+                    throw new AccessDeniedException(path.toString());
+                } 
+                break;  
+            default :
+                throw new IllegalStateException();
             }
-            
         }
+        
     }
     
     void createDirectory(EphemeralFsPath dir, FileAttribute<?>... attrs)
             throws IOException {
         dir = dir.toAbsolutePath();
-        synchronized(fsLock) {
+        fsLock.readLock().lock();
+        try {
             //this is root
             if(dir.getParent() == null) {
                 throw new FileAlreadyExistsException(dir.toString());
@@ -405,13 +527,22 @@ class EphemeralFsFileSystem extends FileSystem {
             if(!resolvedPath.getTarget().isDir()) {
                 throw new FileSystemException(dir.getParent() + " : is Not a directory");
             } 
-            resolvedPath.getTarget().addDir(dir.getFileName(), new FilePermissions(true, attrs));
+            INode parent = resolvedPath.getTarget();
+            lockDirectory(parent, dir.getParent());
+            try {
+                parent.addDir(dir.getFileName(), new FilePermissions(true, attrs));
+            } finally {
+                parent.unlockDirectory();
+            }
+        } finally {
+            fsLock.readLock().unlock();
         }
     }
     
 
     void createSymbolicLink(EphemeralFsPath link, EphemeralFsPath target, FileAttribute<?>[] attrs) throws IOException {
-        synchronized(fsLock) {
+        fsLock.readLock().lock();
+        try {
             EphemeralFsPath dir = link.getParent();
             ResolvedPath resolvedPath = ResolvedPath.resolve(dir, false);
             if(!resolvedPath.hasTarget()) { 
@@ -420,50 +551,121 @@ class EphemeralFsFileSystem extends FileSystem {
             if(!resolvedPath.getTarget().isDir()) {
                 throw new FileSystemException(dir + " : is Not a directory");
             } 
-            resolvedPath.getTarget().addSymlink(link.getFileName(), target);
+            INode parent = resolvedPath.getTarget();
+            lockDirectory(parent, dir);
+            try {
+                parent.addSymlink(link.getFileName(), target);
+            } finally {
+                parent.unlockDirectory();
+            }
+        } finally {
+            fsLock.readLock().unlock();
         }
     }
     
 
     void createLink(EphemeralFsPath link, EphemeralFsPath existing) throws IOException {
-        synchronized(fsLock) {
+        fsLock.readLock().lock();
+        try {
             EphemeralFsPath dir = link.getParent();
             ResolvedPath resolvedPath = ResolvedPath.resolve(dir, false);
-            if(!resolvedPath.hasTarget()) { 
-                throw new NoSuchFileException(dir.toString());
-            }
-            if(!resolvedPath.getTarget().isDir()) {
-                throw new FileSystemException(dir + " : is Not a directory");
-            }
             ResolvedPath existingResolved = ResolvedPath.resolve(existing);
-            if(!existingResolved.hasTarget()) {
-                throw new NoSuchFileException(link.toString());
-            }
-            if(existingResolved.getTarget().isDir()) {
-                throw new FileSystemException(link +  " -> " + existing + ": Operation not permitted");                
+            while(true) {
+                if(!resolvedPath.hasTarget()) { 
+                    throw new NoSuchFileException(dir.toString());
+                }
+                if(!resolvedPath.getTarget().isDir()) {
+                    throw new FileSystemException(dir + " : is Not a directory");
+                }
+                if(!existingResolved.hasTarget()) {
+                    throw new NoSuchFileException(link.toString());
+                }
+                if(existingResolved.getTarget().isDir()) {
+                    throw new FileSystemException(link +  " -> " + existing + ": Operation not permitted");                
+                }
+                //lock the directory of existing as well, so it can't 
+                //be deleted before we link to it
+                INode parent = resolvedPath.getTarget();
+                renameLock.readLock().lock();
+                try {
+                    List<INode> locked = lockDirectories(parent, existingResolved.getParent());
+                    try {
+                        ResolvedPath resolvedNow = ResolvedPath.resolve(dir, false);
+                        ResolvedPath existingNow = ResolvedPath.resolve(existing);
+                        if(!resolvedNow.isSameAs(resolvedPath) || !existingNow.isSameAs(existingResolved)) {
+                            //changed since we resolved it, try again
+                            resolvedPath = resolvedNow;
+                            existingResolved = existingNow;
+                            continue;
+                        }
+                        parent.add(link.getFileName(), existingResolved.getTarget());
+                        return;
+                    } finally {
+                        unlockDirectories(locked);
+                    }
+                } finally {
+                    renameLock.readLock().unlock();
+                }
             }
-            resolvedPath.getTarget().add(link.getFileName(), existingResolved.getTarget());
+        } finally {
+            fsLock.readLock().unlock();
         }
     }
 
 
     
     void delete(EphemeralFsPath path) throws IOException {
-        synchronized(fsLock) {
-            ResolvedPath resolvedPath = ResolvedPath.resolve(path, true);
-            if(resolvedPath.hasTarget()) {
-                INode iNode = resolvedPath.getTarget();
-                if(iNode.isDir() && !iNode.isEmpty()) {
+        fsLock.readLock().lock();
+        try {
+            while(true) {
+                ResolvedPath resolvedPath = ResolvedPath.resolve(path, true);
+                INode iNode = resolvedPath.hasTarget() ? resolvedPath.getTarget() : null;
+                if(iNode != null && iNode.isDir() && !iNode.isEmpty()) {
                     throw new DirectoryNotEmptyException(path.toString());
                 }
+                if(!resolvedPath.didResolve()) {
+                    throw new NoSuchFileException(path.toString());
+                }
+                INode parent = resolvedPath.getParent();
+                EphemeralFsPath name = resolvedPath.getPath().getFileName();
+                boolean isDir = iNode != null && iNode.isDir();
+                
+                lockDirectory(parent, path);
+                try {
+                    DirectoryEntry entry = parent.resolve(name);
+                    if(entry == null ||
+                       entry.isSymbolicLink() != resolvedPath.resolvedToSymbolicLink() ||
+                       entry.getDestination() != iNode) {
+                        //changed since we resolved it, try again
+                        continue;
+                    }
+                    //lock a directory we remove as well, so nothing can be 
+                    //created in it once we have seen it is empty, it 
+                    //can't move out of parent while we hold the lock on 
+                    //parent, so this locks in the same order as lockDirectories()
+                    if(isDir) {
+                        iNode.lockDirectory();
+                    }
+                    try {
+                        if(isDir && !iNode.isEmpty()) {
+                            throw new DirectoryNotEmptyException(path.toString());
+                        }
+                        if(getSettings().isWindows() && resolvedPath.getResolvedProperties().getDosIsReadOnly()) {
+                            throw new AccessDeniedException(path.toString());
+                        }
+                        parent.remove(name);
+                        return;
+                    } finally {
+                        if(isDir) {
+                            iNode.unlockDirectory();
+                        }
+                    }
+                } finally {
+                    parent.unlockDirectory();
+                }
             }
-            if(!resolvedPath.didResolve()) {
-                throw new NoSuchFileException(path.toString());
-            }
-            if(getSettings().isWindows() && resolvedPath.getResolvedProperties().getDosIsReadOnly()) {
-                throw new AccessDeniedException(path.toString());
-            }
-            resolvedPath.getParent().remove(resolvedPath.getPath().getFileName());
+        } finally {
+            fsLock.readLock().unlock();
         }
         
     }
@@ -484,42 +686,95 @@ class EphemeralFsFileSystem extends FileSystem {
             return;
         }
         
-        synchronized(fsLock) {
+        fsLock.readLock().lock();
+        try {
             ResolvedPath sourceResolved = ResolvedPath.resolve(source, true);
-            ResolvedPath targetResolved = ResolvedPath.resolve(target);
-
-            if(!sourceResolved.hasTarget() && !sourceResolved.resolvedToSymbolicLink()) {
-                throw new NoSuchFileException(source.toString());
-            }
-            if(sourceResolved.hasTarget() && sourceResolved.getTarget() == root) {
-                throw new IOException("cant move root");
-            }
-            if(!targetResolved.hasValidParent()) {
-                throw new NoSuchFileException(target.toString());
-            }
-            if(targetResolved.hasTarget()) {
-                if(!optionsSet.contains(StandardCopyOption.REPLACE_EXISTING) &&
-                   //ATOMIC_MOVE on unix at least implies replace existing
-                   !optionsSet.contains(StandardCopyOption.ATOMIC_MOVE)) {
-                    throw new FileAlreadyExistsException(target.toString());
+            //a symbolic link at target is replaced, not what it links to
+            ResolvedPath targetResolved = ResolvedPath.resolve(target, true);
+            while(true) {
+                if(!sourceResolved.hasTarget() && !sourceResolved.resolvedToSymbolicLink()) {
+                    throw new NoSuchFileException(source.toString());
                 }
-                if(getSettings().isWindows() &&
-                    optionsSet.contains(StandardCopyOption.ATOMIC_MOVE)) {
-                    throw new AccessDeniedException(target.toString());
+                if(sourceResolved.hasTarget() && sourceResolved.getTarget() == root) {
+                    throw new IOException("cant move root");
                 }
-                if(targetResolved.getTarget().isDir() && !targetResolved.getTarget().isEmpty()) {
-                    throw new DirectoryNotEmptyException(target.toString());
+                if(!targetResolved.hasValidParent()) {
+                    throw new NoSuchFileException(target.toString());
+                }
+                if(targetResolved.didResolve()) {
+                    if(!optionsSet.contains(StandardCopyOption.REPLACE_EXISTING) &&
+                       //ATOMIC_MOVE on unix at least implies replace existing
+                       !optionsSet.contains(StandardCopyOption.ATOMIC_MOVE)) {
+                        throw new FileAlreadyExistsException(target.toString());
+                    }
+                    if(getSettings().isWindows() &&
+                        optionsSet.contains(StandardCopyOption.ATOMIC_MOVE)) {
+                        throw new AccessDeniedException(target.toString());
+                    }
+                    if(targetResolved.hasTarget() && 
+                       targetResolved.getTarget().isDir() && 
+                       !targetResolved.getTarget().isEmpty()) {
+                        throw new DirectoryNotEmptyException(target.toString());
+                    }
+                }
+                
+                INode sourceParent = sourceResolved.getParent();
+                INode targetParent = targetResolved.getParent();
+                if(!targetParent.isDir()) {
+                    throw new NotDirectoryException(target.toString());
+                }
+                //lock a directory we replace, so it stays empty
+                INode replaced = targetResolved.hasTarget() && targetResolved.getTarget().isDir() ? 
+                        targetResolved.getTarget() : null;
+                boolean movesDirectory = sourceResolved.hasTarget() && 
+                        sourceResolved.getTarget().isDir() &&
+                        sourceParent != targetParent;
+                Lock rename = movesDirectory ? renameLock.writeLock() : renameLock.readLock();
+                rename.lock();
+                try {
+                    List<INode> locked = lockDirectories(sourceParent, targetParent, replaced);
+                    try {
+                        ResolvedPath sourceNow = ResolvedPath.resolve(source, true);
+                        ResolvedPath targetNow = ResolvedPath.resolve(target, true);
+                        if(!sourceNow.isSameAs(sourceResolved) || !targetNow.isSameAs(targetResolved)) {
+                            //changed since we resolved it, try again
+                            sourceResolved = sourceNow;
+                            targetResolved = targetNow;
+                            continue;
+                        }
+                        if(replaced != null && !replaced.isEmpty()) {
+                            throw new DirectoryNotEmptyException(target.toString());
+                        }
+                        if(movesDirectory && targetParent.isInside(sourceResolved.getTarget())) {
+                            throw new FileSystemException(source.toString(), target.toString(), "Invalid argument");
+                        }
+                        
+                        //replace the target in a single step, lookups don't 
+                        //take the lock and must never see the target missing
+                        if(sourceResolved.resolvedToSymbolicLink()) {
+                            if(targetResolved.didResolve()) {
+                                targetParent.replaceWithSymlink(target.getFileName(), sourceResolved.getRawSymbolicLink());
+                            } else {
+                                targetParent.addSymlink(target.getFileName(), sourceResolved.getRawSymbolicLink());
+                            }
+                        } else {
+                            if(targetResolved.didResolve()) {
+                                targetParent.replace(target.getFileName(), sourceResolved.getTarget());
+                            } else {
+                                targetParent.add(target.getFileName(), sourceResolved.getTarget());
+                            }
+                        }
+                        sourceParent.remove(source.getFileName());
+                        return;
+                    } finally {
+                        unlockDirectories(locked);
+                    }
+                } finally {
+                    rename.unlock();
                 }
-                //remove target
-                targetResolved.getParent().remove(target.getFileName());
-            }
-            
-            if(sourceResolved.resolvedToSymbolicLink()) {
-                targetResolved.getParent().addSymlink(target.getFileName(), sourceResolved.getRawSymbolicLink());
-            } else {
-                targetResolved.getParent().add(target.getFileName(), sourceResolved.getTarget());
             }
-            sourceResolved.getParent().remove(source.getFileName());
+        } finally {
+            fsLock.readLock().unlock();
         }
         
     }
@@ -543,82 +798,123 @@ class EphemeralFsFileSystem extends FileSystem {
             throw new UnsupportedOperationException("Atomic Move is not supported");
         }
         
-        synchronized(fsLock) {
-            final ResolvedPath resolvedSource = ResolvedPath.resolve(source, noFollowLinks);
-            final ResolvedPath resolvedTarget = ResolvedPath.resolve(target);
-            
-            //same file
-            if(resolvedSource.hasTarget() && resolvedTarget.hasTarget() &&
-               resolvedSource.getTarget() == resolvedTarget.getTarget()) {
-                return;
-            }
-
-            if(resolvedSource.hasTarget() && resolvedSource.getTarget() == root) {
-                throw new IOException("can't copy root");
-            }
-            
-            if(!resolvedSource.didResolve()) {
-                throw new NoSuchFileException(source.toString());
-            }
-            if(resolvedTarget.didResolve() && !optionsSet.contains(StandardCopyOption.REPLACE_EXISTING)) {
-                throw new FileAlreadyExistsException(target.toString());
-            }
-            if(resolvedTarget.hasTarget() && resolvedTarget.getTarget().isDir() && !resolvedTarget.getTarget().isEmpty()) {
-                throw new DirectoryNotEmptyException(target.toString());
-            }
-            
-            //at this point, if target exists, we are replacing existing
-            if(resolvedTarget.didResolve()) {
-                resolvedTarget.getParent().remove(target.getFileName());
+        fsLock.readLock().lock();
+        try {
+            ResolvedPath resolvedSource = ResolvedPath.resolve(source, noFollowLinks);
+            //a symbolic link at target is replaced, not what it links to
+            ResolvedPath resolvedTarget = ResolvedPath.resolve(target, true);
+            while(true) {
+                //same file
+                if(resolvedSource.hasTarget() && resolvedTarget.hasTarget() &&
+                   resolvedSource.getTarget() == resolvedTarget.getTarget()) {
+                    return;
+                }
+    
+                if(resolvedSource.hasTarget() && resolvedSource.getTarget() == root) {
+                    throw new IOException("can't copy root");
+                }
+                
+                if(!resolvedSource.didResolve()) {
+                    throw new NoSuchFileException(source.toString());
+                }
+                if(resolvedTarget.didResolve() && !optionsSet.contains(StandardCopyOption.REPLACE_EXISTING)) {
+                    throw new FileAlreadyExistsException(target.toString());
+                }
+                if(resolvedTarget.hasTarget() && resolvedTarget.getTarget().isDir() && !resolvedTarget.getTarget().isEmpty()) {
+                    throw new DirectoryNotEmptyException(target.toString());
+                }
+                
+                //at this point, if target exists, we are replacing existing
+                boolean replace = resolvedTarget.didResolve();
+                if(!replace && !resolvedTarget.hasValidParent()) {
+                    throw new NoSuchFileException(target.toString());
+                }
+                
+                INode targetParent = resolvedTarget.getParent();
+                if(!targetParent.isDir()) {
+                    throw new NotDirectoryException(target.toString());
+                }
+                //lock the source directory so the source isn't removed
+                //while we copy it, and a directory we replace so it stays empty
+                INode replaced = resolvedTarget.hasTarget() && resolvedTarget.getTarget().isDir() ? 
+                        resolvedTarget.getTarget() : null;
+                renameLock.readLock().lock();
+                try {
+                    List<INode> locked = lockDirectories(resolvedSource.getParent(), targetParent, replaced);
+                    try {
+                        ResolvedPath sourceNow = ResolvedPath.resolve(source, noFollowLinks);
+                        ResolvedPath targetNow = ResolvedPath.resolve(target, true);
+                        if(!sourceNow.isSameAs(resolvedSource) || !targetNow.isSameAs(resolvedTarget)) {
+                            //changed since we resolved it, try again
+                            resolvedSource = sourceNow;
+                            resolvedTarget = targetNow;
+                            continue;
+                        }
+                        if(replaced != null && !replaced.isEmpty()) {
+                            throw new DirectoryNotEmptyException(target.toString());
+                        }
+                        copyLocked(resolvedSource, target, targetParent, replace, optionsSet);
+                        return;
+                    } finally {
+                        unlockDirectories(locked);
+                    }
+                } finally {
+                    renameLock.readLock().unlock();
+                }
             }
-            else if(!resolvedTarget.hasValidParent()) {
-                throw new NoSuchFileException(target.toString());
+        } finally {
+            fsLock.readLock().unlock();
+        }
+        
+    }
+    
+    private void copyLocked(
+            ResolvedPath resolvedSource,
+            EphemeralFsPath target,
+            INode targetParent,
+            boolean replace,
+            Set<StandardCopyOption> optionsSet) throws IOException {
+        //replace the target in a single step, lookups don't 
+        //take the lock and must never see the target missing
+        boolean sourceIsDir = resolvedSource.hasTarget() && resolvedSource.getTarget().isDir();
+        INode modified = null;
+        if(!sourceIsDir && resolvedSource.resolvedToSymbolicLink()) {
+            if(replace) {
+                targetParent.replaceWithSymlink(target.getFileName(), resolvedSource.getRawSymbolicLink());
+            } else {
+                targetParent.addSymlink(target.getFileName(), resolvedSource.getRawSymbolicLink());
             }
-            
-            
-            INode modified = null;
-            if(resolvedSource.hasTarget() && resolvedSource.getTarget().isDir()) {
-                modified = resolvedTarget.getParent().addDir(target.getFileName(), FilePermissions.createDefaultDirectory());
-            } else if(resolvedSource.resolvedToSymbolicLink()) {
-                resolvedTarget.getParent().addSymlink(target.getFileName(), resolvedSource.getRawSymbolicLink());
-            }
-            else {
-                modified = resolvedTarget.getParent().addFile(target.getFileName(), FilePermissions.createDefaultFile());
-                try(SeekableByteChannel targetChannel = newByteChannel(
-                        //resolve again, the original resolved target
-                        //may not point to the right (or any) INode
-                        target,
-                        EnumSet.of(StandardOpenOption.WRITE)
-                        );
-                    SeekableByteChannel sourceChannel = newByteChannel(
-                            resolvedSource.getPath(), 
-                            EnumSet.of(StandardOpenOption.READ))) {
-
-                    ByteBuffer buf = ByteBuffer.allocate(Math.min(4096, resolvedSource.getTarget().getContentsSize()));
-                    while (sourceChannel.read(buf) >= 0 || buf.position() != 0) {
-                         buf.flip();
-                         targetChannel.write(buf);
-                         buf.compact();  
-                     }
-                }
-                modified.copyPermissions(resolvedSource.getTarget());
+        } else if(replace) {
+            modified = sourceIsDir ? 
+                    INode.newDir(this, FilePermissions.createDefaultDirectory()) :
+                    INode.newFile(this, FilePermissions.createDefaultFile());
+            targetParent.replace(target.getFileName(), modified);
+        } else if(sourceIsDir) {
+            modified = targetParent.addDir(target.getFileName(), FilePermissions.createDefaultDirectory());
+        } else {
+            modified = targetParent.addFile(target.getFileName(), FilePermissions.createDefaultFile());
+        }
+        
+        if(modified != null && modified.isFile()) {
+            modified.copyContents(resolvedSource.getTarget());
+            if(modified.getContentsSize() > 0) {
+                modified.notifyChange(target);
             }
-            
-            if(modified != null) {
-                if(settings.isPosix()) {
-                    if(optionsSet.contains(StandardCopyOption.COPY_ATTRIBUTES)) {
-                        modified.getProperties().getFileTimes().setLastModifiedTime(
-                                resolvedSource.getResolvedProperties().getFileTimes().getLastModifiedTime());
-                    }
-                } else {
-                    //windows always copies last modified time it seems
+            modified.copyPermissions(resolvedSource.getTarget());
+        }
+        
+        if(modified != null) {
+            if(settings.isPosix()) {
+                if(optionsSet.contains(StandardCopyOption.COPY_ATTRIBUTES)) {
                     modified.getProperties().getFileTimes().setLastModifiedTime(
                             resolvedSource.getResolvedProperties().getFileTimes().getLastModifiedTime());
                 }
+            } else {
+                //windows always copies last modified time it seems
+                modified.getProperties().getFileTimes().setLastModifiedTime(
+                        resolvedSource.getResolvedProperties().getFileTimes().getLastModifiedTime());
             }
-            
         }
-        
     }
 
     
@@ -653,15 +949,11 @@ class EphemeralFsFileSystem extends FileSystem {
     public FileAttributesViewBuilder getFileAttributesViewBuilder(
             EphemeralFsPathProvider pathProvider, CloseChecker closeChecker,
             LinkOption... options) {
-        FileAttributesViewBuilder builder;
-        synchronized(fsLock) {
-                builder = new FileAttributesViewBuilder(
-                        this, 
-                        pathProvider, 
-                        closeChecker, 
-                        options);
-        }
-        return builder;
+        return new FileAttributesViewBuilder(
+                this, 
+                pathProvider, 
+                closeChecker, 
+                options);
     }
     
     DirectoryStream<Path> newDirectoryStream(
@@ -669,39 +961,29 @@ class EphemeralFsFileSystem extends FileSystem {
             EphemeralFsPath relativeDir,
             Filter<? super Path> filter) throws IOException {
         
-        synchronized(fsLock) {
-           ResolvedPath resolvedDir = ResolvedPath.resolve(dir);
-           if(!resolvedDir.hasTarget()) {
-               throw new NoSuchFileException(dir.toString());
-           }
-           if(!resolvedDir.getTarget().isDir()) {
-               throw new NotDirectoryException(dir.toString());
-           }
-           
-           List<Path> parts = new ArrayList<>();
-           
-           for(EphemeralFsPath childName : resolvedDir.getTarget().getChildNames()) {
-               Path child = dir.resolve(childName);
-               if(filter.accept(child)) {
-                   parts.add(relativeDir.resolve(child.getFileName()));
-               }
-           }
-           return EphemeralFsSecureDirectoryStream.makeDirectoryStream(
-                   resolvedDir.getTarget(),
-                   relativeDir, 
-                   parts);
+        ResolvedPath resolvedDir = ResolvedPath.resolve(dir);
+        if(!resolvedDir.hasTarget()) {
+            throw new NoSuchFileException(dir.toString());
+        }
+        if(!resolvedDir.getTarget().isDir()) {
+            throw new NotDirectoryException(dir.toString());
         }
+        //children are read and filtered lazily as
+        //the stream is iterated
+        return EphemeralFsSecureDirectoryStream.makeDirectoryStream(
+                resolvedDir.getTarget(),
+                dir,
+                relativeDir, 
+                filter);
     }
 
     public boolean isSameFile(EphemeralFsPath path1, EphemeralFsPath path2) throws FileSystemException {
-        synchronized (fsLock) {
-            ResolvedPath resolved1 = ResolvedPath.resolve(path1, false);
-            ResolvedPath resolved2 = ResolvedPath.resolve(path2, false);
-            if(!resolved1.hasTarget() || !resolved2.hasTarget()) {
-                return false;
-            }
-            return resolved1.getTarget() == resolved2.getTarget();
+        ResolvedPath resolved1 = ResolvedPath.resolve(path1, false);
+        ResolvedPath resolved2 = ResolvedPath.resolve(path2, false);
+        if(!resolved1.hasTarget() || !resolved2.hasTarget()) {
+            return false;
         }
+        return resolved1.getTarget() == resolved2.getTarget();
     }
 
 
@@ -710,23 +992,24 @@ class EphemeralFsFileSystem extends FileSystem {
     }
 
     public Path readSymbolicLink(EphemeralFsPath link) throws FileSystemException {
-        synchronized(fsLock) {
-            ResolvedPath resolved = ResolvedPath.resolve(link.getParent());
-            if(!resolved.hasTarget()) {
-                throw new NoSuchFileException(link.toString());
-            }
-            return resolved.getTarget().getRawSymbolicLink(link.getParent(), link.getFileName());
-            
+        ResolvedPath resolved = ResolvedPath.resolve(link.getParent());
+        if(!resolved.hasTarget()) {
+            throw new NoSuchFileException(link.toString());
         }
-        
+        return resolved.getTarget().getRawSymbolicLink(link.getParent(), link.getFileName());
     }
 
     public Limits getLimits() {
         return limits;
     }
     
+    public BlockAllocator getBlockAllocator() {
+        return blockAllocator;
+    }
+    
     public void assertNoOpenResources() throws AssertionError {
-        synchronized(fsLock) {
+        fsLock.readLock().lock();
+        try {
             Set<CloseTracker> open = new HashSet<>(notClosed);
             if(open.isEmpty()) {
                 return;
@@ -744,11 +1027,14 @@ class EphemeralFsFileSystem extends FileSystem {
                 }
             }
             throw new AssertionError(builder.toString().trim());
+        } finally {
+            fsLock.readLock().unlock();
         }
     }
 
     public void assertAllFilesFsynced(EphemeralFsPath path) throws AssertionError {
-        synchronized(fsLock) {
+        fsLock.readLock().lock();
+        try {
             final List<Path> notFsynced = new ArrayList<>();
             ResolvedPath resolved;
             try {
@@ -779,13 +1065,16 @@ class EphemeralFsFileSystem extends FileSystem {
             } catch (IOException e) {
                 throw new IllegalStateException(e);
             }
+        } finally {
+            fsLock.readLock().unlock();
         }
     }
 
     public void assertAllDirectoriesFsynced(
             EphemeralFsPath dir,
             boolean recursive) {
-        synchronized(fsLock) {
+        fsLock.readLock().lock();
+        try {
             final List<Path> notFsynced = new ArrayList<>();
             ResolvedPath resolved;
             try {
@@ -824,6 +1113,8 @@ class EphemeralFsFileSystem extends FileSystem {
             } catch (IOException e) {
                 throw new IllegalStateException(e);
             }
+        } finally {
+            fsLock.readLock().unlock();
         }
     }
 }
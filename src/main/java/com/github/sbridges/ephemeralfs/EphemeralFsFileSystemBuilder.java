@@ -33,6 +33,7 @@ import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URLEncoder;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.DirectoryStream;
 import java.nio.file.FileSystem;
@@ -59,6 +60,8 @@ public final class EphemeralFsFileSystemBuilder {
     static final String TOTAL_SPACE = "TOTAL_SPACE";
     static final String RECORD_RESOURCE_CREATION_STACK_TRACES = "RECORD_RESOURCE_CREATION_STACK_TRACES";
     static final String MAX_PATH_LENGTH = "MAX_PATH_LENGTH";
+    static final String STORE_CONTENTS_OFF_HEAP = "STORE_CONTENTS_OFF_HEAP";
+    static final String COMPLETE_ASYNC_OPERATIONS_INLINE = "COMPLETE_ASYNC_OPERATIONS_INLINE";
     
     private String name;
     private final Map<String, String> props = new HashMap<>();
@@ -171,6 +174,39 @@ public final class EphemeralFsFileSystemBuilder {
         return this;
     }
     
+    /**
+     * If true, file contents are stored off the java heap in direct 
+     * {@link ByteBuffer}s.  Memory is released when a file is deleted and
+     * no longer open, or when the file system is closed.<P>
+     * 
+     * Storing contents off heap keeps large files from 
+     * being scanned or copied by the garbage collector.  Very small 
+     * files are still stored on the heap.<P>
+     * 
+     * Defaults to false
+     */
+    public EphemeralFsFileSystemBuilder setStoreContentsOffHeap(boolean storeContentsOffHeap) {
+        props.put(STORE_CONTENTS_OFF_HEAP, Boolean.toString(storeContentsOffHeap));
+        return this;
+    }
+    
+    /**
+     * If true, operations on an {@link java.nio.channels.AsynchronousFileChannel}
+     * are completed by the calling thread rather than handed to 
+     * the channel's executor.  Methods returning a Future return an already 
+     * completed Future, and CompletionHandlers are invoked directly by 
+     * the calling thread.<P>
+     * 
+     * To avoid overflowing the stack, if a CompletionHandler starts another
+     * operation, and handlers are nested too deeply, the handler is invoked 
+     * by the executor instead.<P>
+     * 
+     * Defaults to false
+     */
+    public EphemeralFsFileSystemBuilder setCompleteAsyncOperationsInline(boolean completeAsyncOperationsInline) {
+        props.put(COMPLETE_ASYNC_OPERATIONS_INLINE, Boolean.toString(completeAsyncOperationsInline));
+        return this;
+    }
     
     Map<String, ?> buildEnv() {
         return new HashMap<>(props);
@@ -30,6 +30,8 @@
 package com.github.sbridges.ephemeralfs;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URI;
 import java.nio.channels.AsynchronousFileChannel;
 import java.nio.channels.FileChannel;
@@ -45,6 +47,7 @@ import java.nio.file.FileSystemNotFoundException;
 import java.nio.file.LinkOption;
 import java.nio.file.OpenOption;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributeView;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.DosFileAttributeView;
@@ -54,7 +57,9 @@ import java.nio.file.attribute.FileAttributeView;
 import java.nio.file.attribute.PosixFileAttributeView;
 import java.nio.file.attribute.PosixFileAttributes;
 import java.nio.file.spi.FileSystemProvider;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -198,6 +203,38 @@ public final class EphemeralFsFileSystemProvider extends FileSystemProvider {
         return getFs(path).newByteChannel(toEfsPath(path), options, attrs);
     }
 
+    @Override
+    public InputStream newInputStream(Path path, OpenOption... options)
+            throws IOException {
+        for(OpenOption option : options) {
+            if(option == StandardOpenOption.APPEND || 
+               option == StandardOpenOption.WRITE) {
+                throw new UnsupportedOperationException("'" + option + "' not allowed");
+            }
+        }
+        Set<OpenOption> optionsSet = new HashSet<>(Arrays.asList(options));
+        return new EphemeralFsInputStream(getFs(path).newByteChannel(toEfsPath(path), optionsSet));
+    }
+
+    @Override
+    public OutputStream newOutputStream(Path path, OpenOption... options)
+            throws IOException {
+        Set<OpenOption> optionsSet = new HashSet<>();
+        if(options.length == 0) {
+            optionsSet.add(StandardOpenOption.CREATE);
+            optionsSet.add(StandardOpenOption.TRUNCATE_EXISTING);
+        } else {
+            for(OpenOption option : options) {
+                if(option == StandardOpenOption.READ) {
+                    throw new IllegalArgumentException("READ not allowed");
+                }
+                optionsSet.add(option);
+            }
+        }
+        optionsSet.add(StandardOpenOption.WRITE);
+        return new EphemeralFsOutputStream(getFs(path).newByteChannel(toEfsPath(path), optionsSet));
+    }
+
     @Override
     public DirectoryStream<Path> newDirectoryStream(Path dir,
             Filter<? super Path> filter) throws IOException {
@@ -311,20 +348,18 @@ public final class EphemeralFsFileSystemProvider extends FileSystemProvider {
     public Map<String, Object> readAttributes(Path path, String attributes,
             LinkOption... options) throws IOException {
         EphemeralFsPath efsPath = toEfsPath(path);
-        synchronized(efsPath.fs.fsLock) {
-            FileAttributesViewBuilder builder = efsPath.fs.getFileAttributesViewBuilder(
-                    new EphemeralFsPathProvider.ConstefsPathProvider(efsPath), 
-                    CloseChecker.ALWAYS_OPEN, 
-                    options);
-            Map<String, Object> answer = new HashMap<>();
-            for(Attribute a : efsPath.fs.getAttributes().getMultiple(attributes)) {
-                answer.put(
-                        a.getName(),
-                        a.read(builder)
-                        );
-            }
-            return answer;
+        FileAttributesViewBuilder builder = efsPath.fs.getFileAttributesViewBuilder(
+                new EphemeralFsPathProvider.ConstefsPathProvider(efsPath), 
+                CloseChecker.ALWAYS_OPEN, 
+                options);
+        Map<String, Object> answer = new HashMap<>();
+        for(Attribute a : efsPath.fs.getAttributes().getMultiple(attributes)) {
+            answer.put(
+                    a.getName(),
+                    a.read(builder)
+                    );
         }
+        return answer;
         
     }
 
@@ -333,12 +368,15 @@ public final class EphemeralFsFileSystemProvider extends FileSystemProvider {
             LinkOption... options) throws IOException {
         
         EphemeralFsPath efsPath = toEfsPath(path);
-        synchronized(efsPath.fs.fsLock) {
+        efsPath.fs.fsLock.readLock().lock();
+        try {
             FileAttributesViewBuilder builder = efsPath.fs.getFileAttributesViewBuilder(
                     new EphemeralFsPathProvider.ConstefsPathProvider(efsPath), 
                     CloseChecker.ALWAYS_OPEN, 
                     options);
             efsPath.fs.getAttributes().write(attribute, builder, value);
+        } finally {
+            efsPath.fs.fsLock.readLock().unlock();
         }
     }
 
@@ -29,11 +29,15 @@
 
 package com.github.sbridges.ephemeralfs;
 
+/**
+ * File times are volatile, so writers can update the last 
+ * modified time without holding the file system lock.
+ */
 class EphemeralFsFileTimes {
 
-    private long lastModifiedTime;
-    private long creationTime;
-    private long lastAccessTime;
+    private volatile long lastModifiedTime;
+    private volatile long creationTime;
+    private volatile long lastAccessTime;
     
     public EphemeralFsFileTimes() {
         setDefaultTimes();
@@ -56,7 +60,13 @@ class EphemeralFsFileTimes {
     }
     
     public void setLastModifiedTime(long timeMs) {
-        this.lastModifiedTime = roundTime(timeMs);
+        long rounded = roundTime(timeMs);
+        //times are rounded to the second, so most writes don't
+        //change the time, avoid writing to memory shared by threads
+        //writing the same file
+        if(lastModifiedTime != rounded) {
+            this.lastModifiedTime = rounded;
+        }
     }
     
     public void setLastAccessTime(long timeMs) {
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2015 Sean Bridges. All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ * 
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ * 
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * 
+ * 
+ */
+
+package com.github.sbridges.ephemeralfs;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * An InputStream that reads directly from a file channel, without the
+ * extra synchronization and copying of the generic 
+ * {@link java.nio.channels.Channels} adapters.
+ */
+class EphemeralFsInputStream extends InputStream {
+
+    //the largest array we can allocate
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+    
+    private final EphemeralFsFileChannel channel;
+    //scratch space for single byte reads
+    private final byte[] single = new byte[1];
+    
+    EphemeralFsInputStream(EphemeralFsFileChannel channel) {
+        this.channel = channel;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int read = read(single, 0, 1);
+        return read <= 0 ? -1 : single[0] & 0xFF;
+    }
+    
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if(off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        if(len == 0) {
+            return 0;
+        }
+        return channel.read(ByteBuffer.wrap(b, off, len));
+    }
+    
+    @Override
+    public long skip(long n) throws IOException {
+        if(n <= 0) {
+            return 0;
+        }
+        long position = channel.position();
+        long newPosition = position + n;
+        long size = channel.size();
+        if(newPosition < 0 || newPosition > size) {
+            newPosition = Math.max(size, position);
+        }
+        channel.position(newPosition);
+        return newPosition - position;
+    }
+    
+    @Override
+    public int available() throws IOException {
+        long available = channel.size() - channel.position();
+        return (int) Math.max(0, Math.min(available, Integer.MAX_VALUE));
+    }
+    
+    /**
+     * Overrides the java 9 method, we know the size of the file, so
+     * read it into a single array rather than concatenating chunks.
+     */
+    public byte[] readAllBytes() throws IOException {
+        long remaining = channel.size() - channel.position();
+        if(remaining > MAX_ARRAY_SIZE) {
+            throw new OutOfMemoryError("Required array size too large");
+        }
+        byte[] answer = new byte[(int) Math.max(0, remaining)];
+        int total = 0;
+        while(true) {
+            if(total == answer.length) {
+                //we were expecting eof, but the file may have grown
+                //since we checked the size
+                if(channel.position() >= channel.size()) {
+                    return answer;
+                }
+                if(answer.length == MAX_ARRAY_SIZE) {
+                    throw new OutOfMemoryError("Required array size too large");
+                }
+                answer = Arrays.copyOf(answer, (int) Math.min(MAX_ARRAY_SIZE, 
+                        Math.max((long) answer.length * 2, FileContents.BLOCK_SIZE)));
+            }
+            int read = read(answer, total, answer.length - total);
+            if(read < 0) {
+                return total == answer.length ? answer : Arrays.copyOf(answer, total);
+            }
+            total += read;
+        }
+    }
+    
+    /**
+     * Overrides the java 9 method.  Copies directly between files
+     * if out is writing to this file system.
+     */
+    public long transferTo(OutputStream out) throws IOException {
+        if(out == null) {
+            throw new NullPointerException();
+        }
+        if(out instanceof EphemeralFsOutputStream) {
+            long position = channel.position();
+            long transferred = channel.transferTo(
+                    position, 
+                    Math.max(0, channel.size() - position), 
+                    ((EphemeralFsOutputStream) out).getChannel());
+            channel.position(position + transferred);
+            return transferred;
+        }
+        byte[] buffer = new byte[FileContents.BLOCK_SIZE];
+        long transferred = 0;
+        for(int read = read(buffer, 0, buffer.length); read >= 0; read = read(buffer, 0, buffer.length)) {
+            out.write(buffer, 0, read);
+            transferred += read;
+        }
+        return transferred;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
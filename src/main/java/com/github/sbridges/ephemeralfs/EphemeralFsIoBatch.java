@@ -0,0 +1,296 @@
+/*
+ * Copyright 2015 Sean Bridges. All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ * 
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ * 
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * 
+ * 
+ */
+
+package com.github.sbridges.ephemeralfs;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * A batch of reads and writes, possibly to many files, which are 
+ * submitted together and complete together.  This is not part of the 
+ * java.nio api.<P>
+ * 
+ * Consecutive operations on the same channel are performed while holding
+ * that file's lock once, and the whole batch is dispatched to an executor 
+ * once, rather than once per operation.  Operations are performed in 
+ * the order they were added.<P>
+ * 
+ * For example,
+ * 
+ * <pre>
+ * <code>
+        EphemeralFsIoBatch batch = new EphemeralFsIoBatch()
+            .write(channel, header, 0)
+            .write(channel, payload, header.remaining());
+        for(EphemeralFsIoBatch.Result result : batch.submit().get()) {
+            result.getBytes();
+        }
+ * </code>
+ * </pre>
+ * 
+ * The batch is run by the executor of the channel of the 
+ * first operation.  A batch can only be submitted once.
+ */
+public final class EphemeralFsIoBatch {
+
+    private final List<Operation> operations = new ArrayList<>();
+    private boolean submitted;
+    
+    /**
+     * Add a read into dst, starting at position.
+     * 
+     * @param channel an AsynchronousFileChannel opened on an ephemeralfs file system
+     * 
+     * @throws ClassCastException if channel is of the wrong type
+     * @throws IllegalArgumentException if position is negative or dst is read only
+     */
+    public EphemeralFsIoBatch read(AsynchronousFileChannel channel, ByteBuffer dst, long position) 
+            throws ClassCastException, IllegalArgumentException {
+        if(dst.isReadOnly()) {
+            throw new IllegalArgumentException("read only buffer");
+        }
+        return add(channel, dst, position, false);
+    }
+    
+    /**
+     * Add a write of src, starting at position.
+     * 
+     * @param channel an AsynchronousFileChannel opened on an ephemeralfs file system
+     * 
+     * @throws ClassCastException if channel is of the wrong type
+     * @throws IllegalArgumentException if position is negative
+     */
+    public EphemeralFsIoBatch write(AsynchronousFileChannel channel, ByteBuffer src, long position) 
+            throws ClassCastException, IllegalArgumentException {
+        return add(channel, src, position, true);
+    }
+    
+    /**
+     * @return the number of operations added
+     */
+    public synchronized int size() {
+        return operations.size();
+    }
+    
+    /**
+     * Perform all operations, the returned Future completes when 
+     * all operations complete.  The results are in the order the 
+     * operations were added.  The Future does not fail if an operation fails, 
+     * instead the operation's result holds the error.
+     * 
+     * @throws IllegalStateException if the batch has already been submitted
+     */
+    public Future<List<Result>> submit() throws IllegalStateException {
+        final List<Operation> toRun = startSubmit();
+        Callable<List<Result>> task = new Callable<List<Result>>() {
+            @Override
+            public List<Result> call() {
+                return perform(toRun);
+            }
+        };
+        if(toRun.isEmpty()) {
+            FutureTask<List<Result>> answer = new FutureTask<>(task);
+            answer.run();
+            return answer;
+        }
+        return toRun.get(0).channel.submit(task);
+    }
+    
+    /**
+     * Perform all operations, then call handler once with the results
+     * of all operations, in the order the operations were added.  The
+     * handler is only called with failed(..) if the batch itself can not 
+     * be run, if an operation fails, the operation's result holds the error.
+     * 
+     * @throws IllegalStateException if the batch has already been submitted
+     */
+    public <A> void submit(final A attachment, final CompletionHandler<List<Result>, ? super A> handler) 
+            throws IllegalStateException {
+        if(handler == null) {
+            throw new NullPointerException("handler is null");
+        }
+        final List<Operation> toRun = startSubmit();
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                List<Result> results;
+                try {
+                    results = perform(toRun);
+                } catch(RuntimeException e) {
+                    handler.failed(e, attachment);
+                    return;
+                }
+                handler.completed(results, attachment);
+            }
+        };
+        if(toRun.isEmpty()) {
+            task.run();
+        } else {
+            toRun.get(0).channel.dispatch(task);
+        }
+    }
+    
+    private synchronized EphemeralFsIoBatch add(AsynchronousFileChannel channel, ByteBuffer buffer, long position, boolean write) {
+        if(position < 0) {
+            throw new IllegalArgumentException("position must be >= 0, not:" + position);
+        }
+        if(buffer == null) {
+            throw new NullPointerException("buffer is null");
+        }
+        if(submitted) {
+            throw new IllegalStateException("already submitted");
+        }
+        operations.add(new Operation(
+                (EphemeralFsAsynchronousFileChannel) channel, 
+                buffer, 
+                position, 
+                write));
+        return this;
+    }
+    
+    private synchronized List<Operation> startSubmit() {
+        if(submitted) {
+            throw new IllegalStateException("already submitted");
+        }
+        submitted = true;
+        return new ArrayList<>(operations);
+    }
+    
+    private static List<Result> perform(List<Operation> operations) {
+        int start = 0;
+        while(start < operations.size()) {
+            EphemeralFsAsynchronousFileChannel channel = operations.get(start).channel;
+            int end = start + 1;
+            while(end < operations.size() && operations.get(end).channel == channel) {
+                end++;
+            }
+            channel.getChannel().perform(operations.subList(start, end));
+            start = end;
+        }
+        
+        List<Result> answer = new ArrayList<>(operations.size());
+        for(Operation operation : operations) {
+            answer.add(operation.result);
+        }
+        return Collections.unmodifiableList(answer);
+    }
+    
+    /**
+     * A single read or write in a batch
+     */
+    static final class Operation {
+        private final EphemeralFsAsynchronousFileChannel channel;
+        private final ByteBuffer buffer;
+        private final long position;
+        private final boolean write;
+        private Result result;
+        
+        Operation(EphemeralFsAsynchronousFileChannel channel, 
+                ByteBuffer buffer, 
+                long position,
+                boolean write) {
+            if(channel == null) {
+                throw new NullPointerException("channel is null");
+            }
+            this.channel = channel;
+            this.buffer = buffer;
+            this.position = position;
+            this.write = write;
+        }
+
+        ByteBuffer getBuffer() {
+            return buffer;
+        }
+
+        long getPosition() {
+            return position;
+        }
+
+        boolean isWrite() {
+            return write;
+        }
+        
+        void completed(int bytes) {
+            result = new Result(bytes, null);
+        }
+        
+        void failed(Throwable error) {
+            result = new Result(-1, error);
+        }
+    }
+    
+    /**
+     * The result of one operation in a batch
+     */
+    public static final class Result {
+        private final int bytes;
+        private final Throwable error;
+        
+        Result(int bytes, Throwable error) {
+            this.bytes = bytes;
+            this.error = error;
+        }
+        
+        /**
+         * @return true if the operation did not throw
+         */
+        public boolean isSuccess() {
+            return error == null;
+        }
+        
+        /**
+         * The number of bytes read or written, as would be returned by
+         * {@link AsynchronousFileChannel#read(ByteBuffer, long)} or
+         * {@link AsynchronousFileChannel#write(ByteBuffer, long)}.
+         * 
+         * @throws IllegalStateException if the operation failed
+         */
+        public int getBytes() throws IllegalStateException {
+            if(error != null) {
+                throw new IllegalStateException("operation failed", error);
+            }
+            return bytes;
+        }
+        
+        /**
+         * @return the error thrown by the operation, or null if the operation succeeded
+         */
+        public Throwable getError() {
+            return error;
+        }
+    }
+}
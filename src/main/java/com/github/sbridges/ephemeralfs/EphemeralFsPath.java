@@ -33,6 +33,7 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.file.ClosedWatchServiceException;
 import java.nio.file.InvalidPathException;
 import java.nio.file.LinkOption;
 import java.nio.file.NoSuchFileException;
@@ -43,7 +44,6 @@ import java.nio.file.WatchEvent.Kind;
 import java.nio.file.WatchEvent.Modifier;
 import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
-import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -55,7 +55,16 @@ class EphemeralFsPath implements Path {
     
     final EphemeralFsFileSystem fs;
     private final String path;
+    //lazily computed, paths are immutable so racing
+    //to compute these is harmless
     private List<String> cachedParts;
+    private List<EphemeralFsPath> cachedNames;
+    //0 not computed, 1 absolute, 2 relative
+    private byte cachedAbsolute;
+    private String cachedNormalized;
+    private FileName cachedFileName;
+    //0 if not computed
+    private int cachedHash;
     
     private static String concat(String seperator, String first, String ... more) {
         StringBuilder builder = new StringBuilder();
@@ -110,6 +119,17 @@ class EphemeralFsPath implements Path {
         checkValidPath();
     }
     
+    /**
+     * Create a path whose parts are already known, path must 
+     * be what the public constructor would produce, and parts 
+     * must be what split() would return
+     */
+    private EphemeralFsPath(EphemeralFsFileSystem fs, String path, List<String> parts) {
+        this.fs = fs;
+        this.path = path;
+        this.cachedParts = parts;
+    }
+    
     private void checkValidPath() {
         if(path.indexOf('\0') != -1) {
             throw new InvalidPathException(path, "Nul character not allowed");
@@ -123,7 +143,10 @@ class EphemeralFsPath implements Path {
     }
     @Override
     public boolean isAbsolute() {
-        return fs.getSettings().getAbsolutePathPattern().matcher(path).matches();
+        if(cachedAbsolute == 0) {
+            cachedAbsolute = isAbsolute(fs, path) ? (byte) 1 : (byte) 2;
+        }
+        return cachedAbsolute == 1;
     }
     
     @Override
@@ -136,11 +159,11 @@ class EphemeralFsPath implements Path {
     
     @Override
     public EphemeralFsPath getFileName() {
-        List<String> parts = split();
-        if(parts.isEmpty()) {
+        List<EphemeralFsPath> names = splitPaths();
+        if(names.isEmpty()) {
             return null;
         }
-        return newPath(parts.get(parts.size() -  1));
+        return names.get(names.size() -  1);
     }
     
     @Override
@@ -156,11 +179,12 @@ class EphemeralFsPath implements Path {
             return null;
         }
         
-        String newPath = join(fs, (isAbsolute() ? getRootString() : null), parts.subList(0,  parts.size() - 1));
+        List<String> parentParts = parts.subList(0,  parts.size() - 1);
+        String newPath = join(fs, (isAbsolute() ? getRootString() : null), parentParts);
         if(!fs.getSettings().isPosix() && path.startsWith("\\")) {
             newPath = "\\" + newPath;
         }
-        return newPath(newPath);
+        return newPath(newPath, parentParts);
     }
     
     @Override
@@ -170,12 +194,12 @@ class EphemeralFsPath implements Path {
     
     @Override
     public EphemeralFsPath getName(int index) {
-        List<String> parts = split();
-        if(index < 0 || index >= parts.size()) { 
+        List<EphemeralFsPath> names = splitPaths();
+        if(index < 0 || index >= names.size()) { 
             throw new IllegalArgumentException("invalid index:" + index + " nameCount:" + getNameCount());
         }
             
-        return newPath(parts.get(index));
+        return names.get(index);
     }
     
     @Override
@@ -189,7 +213,8 @@ class EphemeralFsPath implements Path {
             if (beginIndex >= endIndex) {
                 throw new IllegalArgumentException("beginIndex:" + beginIndex + " >=" + endIndex);
             }
-            return newPath(join(fs, null, parts.subList(beginIndex, endIndex)));
+            List<String> subParts = parts.subList(beginIndex, endIndex);
+            return newPath(join(fs, null, subParts), subParts);
         } catch(IndexOutOfBoundsException e) {
             //let lists.subList do the bound checking for us, 
             //but translate the exception to match the java docs
@@ -296,7 +321,7 @@ class EphemeralFsPath implements Path {
         if(normalizedParts.isEmpty() && !isAbsolute()) {
             normalizedParts.add("");
         }
-        return newPath(join(fs, (isAbsolute() ? getRootString() : null), normalizedParts));
+        return newPath(join(fs, (isAbsolute() ? getRootString() : null), normalizedParts), normalizedParts);
     }
 
     
@@ -310,13 +335,25 @@ class EphemeralFsPath implements Path {
         if(otherFs.isEmpty()) {        
             return this;
         }
-        List<String> parts = new ArrayList<String>(split());
-        parts.addAll(otherFs.split());
+        List<String> thisParts = split();
+        List<String> otherParts = otherFs.split();
+        List<String> parts = new ArrayList<String>(thisParts.size() + otherParts.size());
+        addNonEmpty(parts, thisParts);
+        addNonEmpty(parts, otherParts);
         String newPath = join(fs, (isAbsolute() ? getRootString() : null), parts);
         if(!fs.getSettings().isPosix() && path.startsWith("\\")) {
             newPath = "\\" + newPath;
         }
-        return newPath(newPath);
+        return newPath(newPath, parts);
+    }
+    
+    private static void addNonEmpty(List<String> to, List<String> parts) {
+        for(int i = 0; i < parts.size(); i++) {
+            String part = parts.get(i);
+            if(!part.isEmpty()) {
+                to.add(part);
+            }
+        }
     }
     
     private boolean isEmpty() {
@@ -386,7 +423,7 @@ class EphemeralFsPath implements Path {
         for(int j = i; j < otherParts.size(); j++) {
             newParts.add(otherParts.get(j));
         }
-        return newPath(join(fs, null, newParts));
+        return newPath(join(fs, null, newParts), newParts);
     }
 
     @Override
@@ -443,7 +480,8 @@ class EphemeralFsPath implements Path {
             throw new IllegalStateException("unsupported modifiers");
         }
 
-        synchronized(fs.fsLock) {
+        fs.fsLock.readLock().lock();
+        try {
             ResolvedPath resolvedThis = ResolvedPath.resolve(this, false);
             if(!resolvedThis.hasTarget()) {
                 throw new NoSuchFileException(toString());
@@ -461,7 +499,15 @@ class EphemeralFsPath implements Path {
             EphemeralFsWatchKey answer = 
                     new EphemeralFsWatchKey(service, this, resolvedThis.getTarget(),  fs, events);
             fs.getWatchRegistry().register(resolvedThis.getTarget(), answer);
+            if(!service.addKey(answer)) {
+                //the service was closed while we registered,
+                //undo the registration so the watch count drops
+                answer.cancel();
+                throw new ClosedWatchServiceException();
+            }
             return answer;
+        } finally {
+            fs.fsLock.readLock().unlock();
         }
     }
     
@@ -476,19 +522,29 @@ class EphemeralFsPath implements Path {
         return (Iterator<Path>) (Object) splitPaths().iterator();
     }
     
+    /**
+     * The names in this path, as paths.  The same
+     * instances are returned on every call.
+     */
     public List<EphemeralFsPath> splitPaths() {
-        final List<String> parts = split();
-        return new AbstractList<EphemeralFsPath>() {
-            @Override
-            public EphemeralFsPath get(int index) {
-                return newPath(parts.get(index));
-            }
-
-            @Override
-            public int size() {
-                return parts.size();
-            }
-        };
+        if(cachedNames != null) {
+            return cachedNames;
+        }
+        List<String> parts = split();
+        if(parts.size() == 1 && !isAbsolute() && parts.get(0).equals(path)) {
+            //we are our own only name
+            cachedNames = Collections.singletonList(this);
+            return cachedNames;
+        }
+        EphemeralFsPath[] names = new EphemeralFsPath[parts.size()];
+        for(int i = 0; i < names.length; i++) {
+            String part = parts.get(i);
+            names[i] = part.isEmpty() ?
+                    newPath(part) : 
+                    new EphemeralFsPath(fs, part, Collections.singletonList(part));
+        }
+        cachedNames = Collections.unmodifiableList(Arrays.asList(names));
+        return cachedNames;
     }
     
     @Override
@@ -501,7 +557,12 @@ class EphemeralFsPath implements Path {
     
     @Override
     public int hashCode() {
-        return normalizedToString().hashCode();
+        int hash = cachedHash;
+        if(hash == 0) {
+            hash = normalizedToString().hashCode();
+            cachedHash = hash;
+        }
+        return hash;
     }
 
     @Override
@@ -519,6 +580,9 @@ class EphemeralFsPath implements Path {
         if(fs != other.fs) {
             return false;
         }
+        if(cachedHash != 0 && other.cachedHash != 0 && cachedHash != other.cachedHash) {
+            return false;
+        }
         return normalizedToString().equals(other.normalizedToString());
     }
     
@@ -527,7 +591,12 @@ class EphemeralFsPath implements Path {
         //windows -> case insensitive, equals compares case insentive
         //mac -> case insensitive, equals compares case sensitive
         if(fs.getSettings().isWindows()) {
-            return path.toLowerCase(Locale.ENGLISH);
+            String normalized = cachedNormalized;
+            if(normalized == null) {
+                normalized = path.toLowerCase(Locale.ENGLISH);
+                cachedNormalized = normalized;
+            }
+            return normalized;
         }
         return path;
     }
@@ -537,12 +606,27 @@ class EphemeralFsPath implements Path {
         return path;
     }
     
+    /**
+     * The key for our file name in a directory, this is 
+     * created once per path.
+     */
     FileName toFileName() {
+        FileName answer = cachedFileName;
+        if(answer != null) {
+            return answer;
+        }
         EphemeralFsPath fileName = getFileName();
-        if(fs.getSettings().caseSensitive()) {
-            return new FileName(fileName.toString(), fileName);
-        } 
-        return new FileName(getFileName().toString().toLowerCase(Locale.ENGLISH), fileName);
+        if(fileName != this) {
+            //share the key with our file name path, which
+            //is reused across all paths split from the same path
+            answer = fileName.toFileName();
+        } else if(fs.getSettings().caseSensitive()) {
+            answer = new FileName(path, this);
+        } else {
+            answer = new FileName(path.toLowerCase(Locale.ENGLISH), this);
+        }
+        cachedFileName = answer;
+        return answer;
     }
     
     private EphemeralFsPath toEfsPath(Path other) {
@@ -590,24 +674,35 @@ class EphemeralFsPath implements Path {
         if(this.cachedParts != null) {
             return this.cachedParts;
         }
-        List<String> parts = new ArrayList<String>();
-        parts.addAll(Arrays.asList(fs.getSettings().getSeperatorPattern().split(path)));
-        Iterator<String> iter = parts.iterator();
-        while(iter.hasNext()) { 
-            if(iter.next().isEmpty()) {
-                iter.remove();
+        char seperator = fs.getSettings().getSeperator().charAt(0);
+        int count = 0;
+        for(int i = 0; i < path.length(); i++) {
+            if(path.charAt(i) != seperator && 
+               (i == 0 || path.charAt(i - 1) == seperator)) {
+                count++;
             }
         }
         
         //when parsing c:\ 
-        //c: will be in parts
-        if(!parts.isEmpty() && 
-           isAbsolute() && 
-           !fs.getSettings().isPosix() ) {
-            parts.remove(0);
+        //c: will be the first part, skip it
+        int skip = (count > 0 && isAbsolute() && !fs.getSettings().isPosix()) ? 1 : 0;
+        String[] parts = new String[count - skip];
+        int found = 0;
+        int start = -1;
+        for(int i = 0; i <= path.length(); i++) {
+            boolean atSeperator = i == path.length() || path.charAt(i) == seperator;
+            if(atSeperator && start != -1) {
+                if(found >= skip) {
+                    parts[found - skip] = path.substring(start, i);
+                }
+                found++;
+                start = -1;
+            } else if(!atSeperator && start == -1) {
+                start = i;
+            }
         }
         
-        this.cachedParts = Collections.unmodifiableList(parts);
+        this.cachedParts = Collections.unmodifiableList(Arrays.asList(parts));
         return cachedParts;
     }
     
@@ -641,5 +736,15 @@ class EphemeralFsPath implements Path {
     private EphemeralFsPath newPath(String path) {
         return new EphemeralFsPath(fs, path);
     }
+    
+    /**
+     * Create a path we have already split into parts
+     */
+    private EphemeralFsPath newPath(String path, List<String> parts) {
+        if(path.isEmpty()) {
+            return newPath(path);
+        }
+        return new EphemeralFsPath(fs, path, Collections.unmodifiableList(parts));
+    }
 
 }
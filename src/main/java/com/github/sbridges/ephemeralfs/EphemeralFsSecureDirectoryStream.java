@@ -33,6 +33,7 @@ import java.io.IOException;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.file.ClosedDirectoryStreamException;
 import java.nio.file.CopyOption;
+import java.nio.file.DirectoryIteratorException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.FileSystemException;
 import java.nio.file.LinkOption;
@@ -43,16 +44,19 @@ import java.nio.file.SecureDirectoryStream;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.attribute.FileAttribute;
 import java.nio.file.attribute.FileAttributeView;
-import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 class EphemeralFsSecureDirectoryStream implements SecureDirectoryStream<Path> {
 
     private boolean used = false;
     private volatile boolean closed = false;
-    private final List<Path> paths;
+    //the live children of myDirectory
+    private final Iterator<EphemeralFsPath> childNames;
+    //the path children are resolved against when filtering
+    private final EphemeralFsPath filterPath;
+    private final Filter<? super Path> filter;
     
     private final EphemeralFsPath myPath;
     private final INode myDirectory;
@@ -70,18 +74,25 @@ class EphemeralFsSecureDirectoryStream implements SecureDirectoryStream<Path> {
     
     public static DirectoryStream<Path> makeDirectoryStream(
             INode directory,
+            EphemeralFsPath filterPath,
             EphemeralFsPath path, 
-            List<Path> paths) {
+            Filter<? super Path> filter) {
         
-        EphemeralFsSecureDirectoryStream answer = new EphemeralFsSecureDirectoryStream(directory, path, paths);
+        EphemeralFsSecureDirectoryStream answer = new EphemeralFsSecureDirectoryStream(directory, filterPath, path, filter);
         if(directory.getFs().getSettings().isWindows() || directory.getFs().getSettings().isMac()) {
             return answer.nonSecure();
         }
         return answer;
     }
     
-    private EphemeralFsSecureDirectoryStream(INode directory, EphemeralFsPath path, List<Path> paths) {
-        this.paths = new ArrayList<Path>(paths);
+    private EphemeralFsSecureDirectoryStream(
+            INode directory, 
+            EphemeralFsPath filterPath, 
+            EphemeralFsPath path, 
+            Filter<? super Path> filter) {
+        this.childNames = directory.iterateChildNames();
+        this.filterPath = filterPath;
+        this.filter = filter;
         this.myDirectory = directory;
         this.myPath = path;
         this.closeTracker = path.getFileSystem().trackClose(DirectoryStream.class, path);
@@ -107,42 +118,28 @@ class EphemeralFsSecureDirectoryStream implements SecureDirectoryStream<Path> {
         //close() should mean that we don't return more results
         //other than what we have already computed by calls to hasNext()
         return new Iterator<Path>() {
-            final Iterator<Path> delegate = paths.iterator();
             Path peeked;
             
             @Override
             public boolean hasNext() {
-                if(closed) {
-                    empty();
-                }
                 if(peeked != null) {
                     return true;
                 }
-                if(delegate.hasNext()) {
-                    peeked = delegate.next();
-                    return true;
+                if(closed) {
+                    return false;
                 }
-                return false;
+                peeked = nextAccepted();
+                return peeked != null;
             }
 
             @Override
             public Path next() {
-                if(closed) {
-                    empty();
-                }
-                if(peeked != null) {
-                    Path answer = peeked;
-                    peeked = null;
-                    return answer;
-                }
-                //the caller hasn't called hasNext()
-                return delegate.next();
-            }
-
-            private void empty() {
-                while(delegate.hasNext()) {
-                    delegate.next();
+                if(!hasNext()) {
+                    throw new NoSuchElementException();
                 }
+                Path answer = peeked;
+                peeked = null;
+                return answer;
             }
             
             @Override
@@ -152,32 +149,49 @@ class EphemeralFsSecureDirectoryStream implements SecureDirectoryStream<Path> {
         };
     }
 
+    /**
+     * The next child accepted by the filter, or null if there are
+     * no more.  The filter is user code, and is called without 
+     * holding any lock.
+     */
+    private Path nextAccepted() {
+        while(childNames.hasNext()) {
+            EphemeralFsPath childName = childNames.next();
+            try {
+                if(filter.accept(filterPath.resolve(childName))) {
+                    return myPath.resolve(childName);
+                }
+            } catch(IOException e) {
+                throw new DirectoryIteratorException(e);
+            }
+        }
+        return null;
+    }
+
     @Override
     public SecureDirectoryStream<Path> newDirectoryStream(Path path,
             LinkOption... options) throws IOException {
         EphemeralFsPath efsPath = cast(path);
-        synchronized(efsPath.fs.fsLock) {
-            EphemeralFsPath actualPath = translate(efsPath);
-            for(LinkOption option : options) {
-                if(option == LinkOption.NOFOLLOW_LINKS) {
-                    ResolvedPath resolved = ResolvedPath.resolve(actualPath, true);
-                    if(resolved.resolvedToSymbolicLink()) {
-                        throw new FileSystemException(path + ": Too many levels of symbolic links");
-                    }
+        EphemeralFsPath actualPath = translate(efsPath);
+        for(LinkOption option : options) {
+            if(option == LinkOption.NOFOLLOW_LINKS) {
+                ResolvedPath resolved = ResolvedPath.resolve(actualPath, true);
+                if(resolved.resolvedToSymbolicLink()) {
+                    throw new FileSystemException(path + ": Too many levels of symbolic links");
                 }
             }
-            
-            return (SecureDirectoryStream<Path>) actualPath.fs.newDirectoryStream(
-                    actualPath,
-                    efsPath.isAbsolute() ? efsPath : myPath.resolve(efsPath),
-                    new Filter<Path>() {
-                @Override
-                public boolean accept(Path entry) throws IOException {
-                    return true;
-                }
-            } );
         }
         
+        return (SecureDirectoryStream<Path>) actualPath.fs.newDirectoryStream(
+                actualPath,
+                efsPath.isAbsolute() ? efsPath : myPath.resolve(efsPath),
+                new Filter<Path>() {
+            @Override
+            public boolean accept(Path entry) throws IOException {
+                return true;
+            }
+        } );
+        
     }
 
     @Override
@@ -185,16 +199,20 @@ class EphemeralFsSecureDirectoryStream implements SecureDirectoryStream<Path> {
             Set<? extends OpenOption> options, FileAttribute<?>... attrs)
             throws IOException {
         EphemeralFsPath efsPath = cast(path);
-        synchronized(efsPath.fs.fsLock) {
+        efsPath.fs.fsLock.readLock().lock();
+        try {
             EphemeralFsPath actualPath = translate(efsPath);
             return efsPath.fs.newByteChannel(actualPath, options, attrs);
+        } finally {
+            efsPath.fs.fsLock.readLock().unlock();
         }
     }
 
     @Override
     public void deleteFile(Path path) throws IOException {
         EphemeralFsPath efsPath = cast(path);
-        synchronized(efsPath.fs.fsLock) {
+        efsPath.fs.fsLock.readLock().lock();
+        try {
             EphemeralFsPath actualPath = translate(efsPath);
             if(actualPath == null) {
                 throw new NoSuchFileException(path.toString());
@@ -204,13 +222,16 @@ class EphemeralFsSecureDirectoryStream implements SecureDirectoryStream<Path> {
                 throw new FileSystemException(path + ": Is a directory");
             } 
             actualPath.fs.delete(actualPath);
+        } finally {
+            efsPath.fs.fsLock.readLock().unlock();
         }
     }
 
     @Override
     public void deleteDirectory(Path path) throws IOException {
         EphemeralFsPath efsPath = cast(path);
-        synchronized(efsPath.fs.fsLock) {
+        efsPath.fs.fsLock.readLock().lock();
+        try {
             EphemeralFsPath actualPath = translate(efsPath);
             if(actualPath == null) {
                 throw new NoSuchFileException(path.toString());
@@ -225,6 +246,8 @@ class EphemeralFsSecureDirectoryStream implements SecureDirectoryStream<Path> {
             }
             actualPath.fs.delete(actualPath);
             return;
+        } finally {
+            efsPath.fs.fsLock.readLock().unlock();
         }
         
     }
@@ -237,48 +260,47 @@ class EphemeralFsSecureDirectoryStream implements SecureDirectoryStream<Path> {
         EphemeralFsPath efsSrcPath = cast(srcpath);
         EphemeralFsPath efsTargetPath = cast(targetpath);
         EphemeralFsSecureDirectoryStream efsTargetDir = cast(targetdir);
-        synchronized(efsSrcPath.fs.fsLock) {
+        efsSrcPath.fs.fsLock.readLock().lock();
+        try {
             
             EphemeralFsPath actualSrcPath = translate(efsSrcPath);
             EphemeralFsPath actualTargetPath = efsTargetDir.translate(efsTargetPath);
             
             efsSrcPath.fs.move(actualSrcPath, actualTargetPath, new CopyOption[] {StandardCopyOption.ATOMIC_MOVE});
+        } finally {
+            efsSrcPath.fs.fsLock.readLock().unlock();
         }
         
     }
 
     @Override
     public <V extends FileAttributeView> V getFileAttributeView(Class<V> type) {
-        synchronized(myPath.fs.fsLock) {
-            return myPath.fs.getFileAttributeView(
-                    new EphemeralFsPathProvider() {
+        return myPath.fs.getFileAttributeView(
+                new EphemeralFsPathProvider() {
 
-                        @Override
-                        public EphemeralFsPath get() {
-                            return myDirectory.getPathToRoot();
-                        }
-                    },
-                    type, 
-                    closeChecker);
-        }
+                    @Override
+                    public EphemeralFsPath get() {
+                        return myDirectory.getPathToRoot();
+                    }
+                },
+                type, 
+                closeChecker);
     }
 
     @Override
     public <V extends FileAttributeView> V getFileAttributeView(Path path,
             Class<V> type, LinkOption... options) {
         final EphemeralFsPath efsPath = cast(path);
-        synchronized(efsPath.fs.fsLock) {
-            return efsPath.fs.getFileAttributeView(
-                    new EphemeralFsPathProvider() {
-                        @Override
-                        public EphemeralFsPath get() {
-                            return translate(efsPath);
-                        }
-                    }, 
-                    type, 
-                    closeChecker, 
-                    options);
-        }
+        return efsPath.fs.getFileAttributeView(
+                new EphemeralFsPathProvider() {
+                    @Override
+                    public EphemeralFsPath get() {
+                        return translate(efsPath);
+                    }
+                }, 
+                type, 
+                closeChecker, 
+                options);
     }
     
     private EphemeralFsPath cast(Path p) {
@@ -47,6 +47,7 @@ class EphemeralFsWatchKey implements WatchKey {
     
     private final List<EphemeralFsWatchEvent> events = new ArrayList<>();
     
+    //guarded by this
     private boolean cancelled = false;
     private boolean triggered = false;
     
@@ -74,7 +75,7 @@ class EphemeralFsWatchKey implements WatchKey {
 
     @Override
     public boolean isValid() {
-        synchronized(fs.fsLock) {
+        synchronized(this) {
             if(cancelled) {
                 return false;
             }
@@ -84,7 +85,7 @@ class EphemeralFsWatchKey implements WatchKey {
 
     @Override
     public List<WatchEvent<?>> pollEvents() {
-        synchronized(fs.fsLock) {
+        synchronized(this) {
             List<WatchEvent<?>> answer = new ArrayList<>();
             answer.addAll(events);
             events.clear();
@@ -94,10 +95,10 @@ class EphemeralFsWatchKey implements WatchKey {
 
     @Override
     public boolean reset() {
-        synchronized(fs.fsLock) {
-            if(!iNode.exists()) {
-                return false;
-            }
+        if(!iNode.exists()) {
+            return false;
+        }
+        synchronized(this) {
             if(!isValid()) {
                 return false;
             }
@@ -116,13 +117,17 @@ class EphemeralFsWatchKey implements WatchKey {
 
     @Override
     public void cancel() {
-        synchronized(fs.fsLock) {
+        synchronized(this) {
+            if(cancelled) {
+                return;
+            }
             cancelled = true;
+            fs.getWatchRegistry().deregister(iNode, this);
         }
     }
 
     public void hear(EphemeralFsWatchEvent e) {
-        synchronized (fs.fsLock) {
+        synchronized(this) {
             if(!isValid()) {
                 return;
             }
@@ -152,7 +157,7 @@ class EphemeralFsWatchKey implements WatchKey {
     }
 
     public void setTriggered() {
-       synchronized(fs.fsLock) {
+       synchronized(this) {
            triggered = true;
        }
         
@@ -32,6 +32,8 @@ package com.github.sbridges.ephemeralfs;
 import java.io.IOException;
 import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
@@ -43,8 +45,10 @@ class EphemeralFsWatchService implements WatchService {
         return fs;
     }
 
-    private boolean closed = false;
+    private volatile boolean closed = false;
     private final LinkedBlockingQueue<EphemeralFsWatchKey> queue = new LinkedBlockingQueue<>();
+    //keys registered with this service, guarded by itself
+    private final List<EphemeralFsWatchKey> keys = new ArrayList<>();
     private final CloseTracker closeTracker;
     
     
@@ -55,8 +59,16 @@ class EphemeralFsWatchService implements WatchService {
 
     @Override
     public void close() throws IOException {
-        synchronized(fs.fsLock) {
+        List<EphemeralFsWatchKey> toCancel;
+        synchronized(keys) {
             closed = true;
+            toCancel = new ArrayList<>(keys);
+            keys.clear();
+        }
+        //stop hearing changes, cancel outside
+        //our lock since keys call back into isClosed()
+        for(EphemeralFsWatchKey key : toCancel) {
+            key.cancel();
         }
         closeTracker.onClose();
         
@@ -93,8 +105,20 @@ class EphemeralFsWatchService implements WatchService {
 
     
     boolean isClosed() {
-        synchronized(fs.fsLock) {
-            return closed;
+        return closed;
+    }
+
+    /**
+     * @return false if we are closed, in which case the caller 
+     * must cancel the key, as close() will not see it
+     */
+    boolean addKey(EphemeralFsWatchKey key) {
+        synchronized(keys) {
+            if(closed) {
+                return false;
+            }
+            keys.add(key);
+            return true;
         }
     }
 
@@ -87,32 +87,29 @@ class FileAttributesViewBuilder {
     }
 
     FileAttributesSnapshot snapshotProperties() throws IOException {
-        synchronized (fs.fsLock) {
-            closeChecker.assertNotClosed();
-            EphemeralFsPath path = pathProvider.get();
-            ResolvedPath resolved = resolve(path);
-            if (resolved.resolvedToSymbolicLink()) {
-                DirectoryEntry entry = resolved.getParent().resolve(
-                        path.getFileName());
-                return new FileAttributesSnapshot(
-                        false, 
-                        false, 
-                        true,
-                        false, 
-                        1, 
-                        1,
-                        entry.getLinkProperties()        
-                        );
-            }
-
-            return resolved.getTarget().getAttributes();
+        closeChecker.assertNotClosed();
+        EphemeralFsPath path = pathProvider.get();
+        ResolvedPath resolved = resolve(path);
+        if (resolved.resolvedToSymbolicLink()) {
+            return new FileAttributesSnapshot(
+                    false, 
+                    false, 
+                    true,
+                    false, 
+                    1, 
+                    1,
+                    resolved.getResolvedProperties()
+                    );
         }
+
+        return resolved.getTarget().getAttributes();
     }
 
     private void setTimes(FileTime lastModifiedTime, FileTime lastAccessTime,
             FileTime createTime) throws IOException {
         closeChecker.assertNotClosed();
-        synchronized (fs.fsLock) {
+        fs.fsLock.readLock().lock();
+        try {
             ResolvedPath rs = resolve(pathProvider.get());
 
             if(!rs.resolvedToSymbolicLink()) {
@@ -127,6 +124,8 @@ class FileAttributesViewBuilder {
                 }   
                 rs.getTarget().notifyChange(rs.getPath());
             }
+        } finally {
+            fs.fsLock.readLock().unlock();
         }
     }
     
@@ -196,13 +195,16 @@ class FileAttributesViewBuilder {
         @Override
         public void setPermissions(Set<PosixFilePermission> perms)
                 throws IOException {
-            synchronized (fs.fsLock) {
+            fs.fsLock.readLock().lock();
+            try {
                 EphemeralFsPath path = pathProvider.get();
                 ResolvedPath resolved = resolve(path);
                 if(!resolved.hasTarget()) {
                     throw new UnsupportedOperationException();
                 }
                 resolved.getTarget().setPermissions(perms);
+            } finally {
+                fs.fsLock.readLock().unlock();
             }
         }
 
@@ -237,9 +239,12 @@ class FileAttributesViewBuilder {
         @Override
         public void setReadOnly(boolean value) throws IOException {
             closeChecker.assertNotClosed();
-            synchronized (fs.fsLock) {
+            fs.fsLock.readLock().lock();
+            try {
                 ResolvedPath rs = resolve(pathProvider.get());
                 rs.getResolvedProperties().setDosIsReadOnly(value);
+            } finally {
+                fs.fsLock.readLock().unlock();
             }
 
         }
@@ -247,28 +252,37 @@ class FileAttributesViewBuilder {
         @Override
         public void setHidden(boolean value) throws IOException {
             closeChecker.assertNotClosed();
-            synchronized (fs.fsLock) {
+            fs.fsLock.readLock().lock();
+            try {
                 ResolvedPath rs = resolve(pathProvider.get());
                 rs.getResolvedProperties().setDosIsHidden(value);
                 
+            } finally {
+                fs.fsLock.readLock().unlock();
             }
         }
 
         @Override
         public void setSystem(boolean value) throws IOException {
             closeChecker.assertNotClosed();
-            synchronized (fs.fsLock) {
+            fs.fsLock.readLock().lock();
+            try {
                 ResolvedPath rs = resolve(pathProvider.get());
                 rs.getResolvedProperties().setDosIsSystem(value);
+            } finally {
+                fs.fsLock.readLock().unlock();
             }
         }
 
         @Override
         public void setArchive(boolean value) throws IOException {
             closeChecker.assertNotClosed();
-            synchronized (fs.fsLock) {
+            fs.fsLock.readLock().lock();
+            try {
                 ResolvedPath rs = resolve(pathProvider.get());
                 rs.getResolvedProperties().setDosIsArchive(value);
+            } finally {
+                fs.fsLock.readLock().unlock();
             }
         }
     }
@@ -283,18 +297,19 @@ class FileAttributesViewBuilder {
         @Override
         public UserPrincipal getOwner() throws IOException {
             closeChecker.assertNotClosed();
-            synchronized (fs.fsLock) {
-                ResolvedPath rs = resolve(pathProvider.get());
-                return rs.getResolvedProperties().getOwner();
-            }
+            ResolvedPath rs = resolve(pathProvider.get());
+            return rs.getResolvedProperties().getOwner();
         }
 
         @Override
         public void setOwner(UserPrincipal owner) throws IOException {
             closeChecker.assertNotClosed();
-            synchronized (fs.fsLock) {
+            fs.fsLock.readLock().lock();
+            try {
                 ResolvedPath rs = resolve(pathProvider.get());
                 rs.getResolvedProperties().setOwner(owner);
+            } finally {
+                fs.fsLock.readLock().unlock();
             } 
         }
     }
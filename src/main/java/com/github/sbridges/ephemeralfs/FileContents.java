@@ -38,35 +38,62 @@ import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 import java.nio.channels.OverlappingFileLockException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
- * The contents of a file
+ * The contents of a file.<P>
+ * 
+ * Contents are stored in fixed size blocks which are allocated
+ * as the file is written, so growing a file never copies data
+ * that has already been written.<P>
+ * 
+ * Blocks that have never been written are holes, holes read as zeros
+ * and do not use memory or disk space.  Only allocated blocks count 
+ * against the file system's total space.<P>
+ * 
+ * Nothing is allocated until the file is written, and small files 
+ * are stored in a byte[] rather than in blocks.
  */
 class FileContents {
 
-    static final int INITIAL_BUFFER_SIZE = 1024;
+    static final int BLOCK_SIZE = 8 * 1024;
+    //block indexes are ints
+    static final long MAX_SIZE = (long) Integer.MAX_VALUE * BLOCK_SIZE;
+    static final int INLINE_SIZE = 64;
+    private static final byte[] ZEROS = new byte[BLOCK_SIZE];
 
-    //all modifications done on this file are done while holding this lock
+    //all modifications done on this file are done while holding the write lock
+    //reads of the contents are done while holding the read lock, so 
+    //reads can happen in parallel
+    //
     //you should not acquire the file system lock
     //while holding this lock
-    final Object lock = new Object();
-    private ByteBuffer contents;
+    final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    //null until a block is written
+    private BlockTable blocks;
+    //the contents of the file if the file is no larger
+    //than INLINE_SIZE, and no blocks have been written
+    private byte[] inline;
     private final EphemeralFsFileSystem fs;
 
-    private int size = 0;
-    private final List<EphemeralFsFileLock> locks = new ArrayList<>();
+    private long size = 0;
+    //disk space acquired from Limits for this file
+    private long allocatedSpace = 0;
+    //created on first lock
+    private List<EphemeralFsFileLock> locks;
 
     private final INode iNode;
     //do we have contents that have not been
     //fsynced
-    private boolean isDirty = true;
+    private volatile boolean isDirty = true;
 
     public FileContents(EphemeralFsFileSystem fs, INode iNode) {
         this.fs = fs;
         this.iNode = iNode;
-        createNewBuffer(INITIAL_BUFFER_SIZE, false);
     }
     
     public EphemeralFsFileChannel newChannel(
@@ -81,15 +108,15 @@ class FileContents {
         if(!canRead && !canWrite) {
             throw new IllegalArgumentException("can't read or write?");
         }
-        synchronized(fs.fsLock) {
-             iNode.addOpenFileHandle();
-        }
-        synchronized(lock) {
+        iNode.addOpenFileHandle();
+        lock.writeLock().lock();
+        try {
             EphemeralFsFileChannel answer = 
                     new EphemeralFsFileChannel(
                             this, 
                             canRead, 
                             canWrite, 
+                            append,
                             deleteOnClose,
                             sync,
                             resolvedPath,
@@ -103,43 +130,382 @@ class FileContents {
                 }
             }
             if(truncate) {
-                try {
-                    //we are always freeing space, so we shouldn't throw
-                    setSize(0);
-                } catch (IOException e) {
-                    throw new IllegalStateException(e);
-                }
-                createNewBuffer(INITIAL_BUFFER_SIZE, false);
+                //we are always freeing space, so we shouldn't throw
+                truncate(0);
             }
             return answer;
+        } finally {
+            lock.writeLock().unlock();
         }
     }
 
     
-    public void setSize(int newSize) throws IOException {
-        if(newSize == size) {
+    /**
+     * Read from position into dst, returning the number of bytes read, 
+     * or -1 if position is at or past the end of the file.<P>
+     * 
+     * Must be called while holding the read or write lock.
+     */
+    public int read(long position, ByteBuffer dst) {
+        if(position >= size) {
+            return -1;
+        }
+        int toRead = (int) Math.min(dst.remaining(), size - position);
+        if(inline != null) {
+            dst.put(inline, (int) position, toRead);
+            return toRead;
+        }
+        long current = position;
+        long end = position + toRead;
+        while(current < end) {
+            int offset = (int) (current % BLOCK_SIZE);
+            int length = (int) Math.min(BLOCK_SIZE - offset, end - current);
+            Block block = blocks == null ? null : blocks.get(blockIndex(current));
+            if(block == null) {
+                dst.put(ZEROS, 0, length);
+            } else {
+                block.read(offset, dst, length);
+            }
+            current += length;
+        }
+        return toRead;
+    }
+    
+    /**
+     * Read from position into dsts, filling each buffer before 
+     * moving on to the next, returning the number of bytes read, 
+     * or -1 if position is at or past the end of the file.<P>
+     * 
+     * Must be called while holding the read or write lock.
+     */
+    public long read(long position, ByteBuffer[] dsts, int offset, int length) {
+        if(position >= size) {
+            return -1;
+        }
+        long total = 0;
+        for(int i = offset; i < offset + length; i++) {
+            ByteBuffer dst = dsts[i];
+            if(!dst.hasRemaining()) {
+                continue;
+            }
+            int read = read(position + total, dst);
+            if(read <= 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+    
+    /**
+     * Return a read only view of the contents starting at position, no
+     * longer than maxLength bytes and not extending past the block containing
+     * position, or null if position is at or past the end of the file.<P>
+     * 
+     * The block backing the view is pinned, so the view can be used after 
+     * the lock is released, writers will copy the block rather than modify it.
+     * The view must be released with {@link #release(View)}.<P>
+     * 
+     * Must be called while holding the read or write lock.
+     */
+    public View view(long position, long maxLength) {
+        if(position >= size) {
+            return null;
+        }
+        int offset = (int) (position % BLOCK_SIZE);
+        int length = (int) Math.min(Math.min(maxLength, BLOCK_SIZE - offset), size - position);
+        if(inline != null) {
+            //inline contents are small, and modified in place, so copy them
+            return new View(ByteBuffer.wrap(Arrays.copyOfRange(inline, offset, offset + length)), null);
+        }
+        Block block = blocks == null ? null : blocks.get(blockIndex(position));
+        if(block == null) {
+            return new View(ByteBuffer.wrap(ZEROS, 0, length).asReadOnlyBuffer(), null);
+        }
+        return new View(block.share().view(offset, length), block);
+    }
+    
+    /**
+     * Release a view returned by {@link #view(long, long)}, the 
+     * view's buffer must not be used after this.  Does not need the lock.
+     */
+    public void release(View view) {
+        if(view.pinned != null) {
+            fs.getBlockAllocator().release(view.pinned);
+        }
+    }
+    
+    /**
+     * Write all of src at position, growing the file if needed, and 
+     * return the number of bytes written.<P>
+     * 
+     * Must be called while holding the write lock.
+     */
+    public int write(long position, ByteBuffer src) throws IOException {
+        int toWrite = src.remaining();
+        boolean useInline = reserve(position, toWrite);
+        put(position, src, useInline);
+        return toWrite;
+    }
+    
+    /**
+     * Write all of srcs contiguously starting at position, 
+     * growing the file if needed, and return the number of bytes written.
+     * Space for the whole write is reserved once, before anything is written.<P>
+     * 
+     * Must be called while holding the write lock.
+     */
+    public long write(long position, ByteBuffer[] srcs, int offset, int length) throws IOException {
+        long toWrite = 0;
+        for(int i = offset; i < offset + length; i++) {
+            toWrite += srcs[i].remaining();
+        }
+        boolean useInline = reserve(position, toWrite);
+        long current = position;
+        for(int i = offset; i < offset + length; i++) {
+            int remaining = srcs[i].remaining();
+            put(current, srcs[i], useInline);
+            current += remaining;
+        }
+        return toWrite;
+    }
+    
+    /**
+     * Acquire the disk space for, and grow the file to 
+     * include, toWrite bytes starting at position.  Returns true 
+     * if the bytes should be stored inline.
+     */
+    private boolean reserve(long position, long toWrite) throws IOException {
+        long end = position + toWrite;
+        if(end > MAX_SIZE || end < 0) {
+            throw new IOException("max file size is " + MAX_SIZE);
+        }
+        long newSize = Math.max(size, end);
+        
+        if(blocks == null && newSize <= INLINE_SIZE && (inline != null || toWrite > 0)) {
+            setAllocatedSpace(newSize);
+            if(inline == null) {
+                inline = new byte[INLINE_SIZE];
+            }
+            size = newSize;
+            return true;
+        }
+        
+        //acquire disk space before modifying anything
+        int newBlocks = 0;
+        int lastWritten = -1;
+        if(toWrite > 0) {
+            lastWritten = blockIndex(end - 1);
+            for(int i = blockIndex(position); i <= lastWritten; i++) {
+                if(!isAllocated(i)) {
+                    newBlocks++;
+                }
+            }
+        }
+        int newLastBlock = lastBlock(newSize);
+        setAllocatedSpace(allocatedSpace(
+                newSize, 
+                allocatedBlockCount() + newBlocks, 
+                newLastBlock == lastWritten || isAllocated(newLastBlock)));
+        size = newSize;
+        if(inline != null) {
+            //we have outgrown inline storage, even if nothing 
+            //is written reads past INLINE_SIZE must use blocks
+            writableBlock(0);
+        }
+        return false;
+    }
+    
+    /**
+     * Copy all of src to position, space must already be reserved.
+     */
+    private void put(long position, ByteBuffer src, boolean useInline) {
+        if(useInline) {
+            src.get(inline, (int) position, src.remaining());
             return;
         }
-        if(newSize > size) {
-            fs.getLimits().tryAcquireDiskSpace(newSize - size);
-        } else {
-            fs.getLimits().releaseDiskSpace(size - newSize);
+        long current = position;
+        long end = position + src.remaining();
+        while(current < end) {
+            int offset = (int) (current % BLOCK_SIZE);
+            int length = (int) Math.min(BLOCK_SIZE - offset, end - current);
+            writableBlock(blockIndex(current)).write(src, offset, length);
+            current += length;
         }
-        this.size = newSize;
     }
-
-    public void createNewBuffer(int newSize, boolean copyOld) {
-        ByteBuffer newContents = ByteBuffer.allocate(newSize);
-        if(copyOld && size > 0) {
-            contents.position(0);
-            contents.limit(size);
-            newContents.put(contents);
+    
+    /**
+     * Shrink the file to newSize, if newSize is less than the current size.<P>
+     * 
+     * Must be called while holding the write lock.
+     */
+    public void truncate(long newSize) {
+        if(newSize >= size) {
+            return;
+        }
+        size = newSize;
+        if(inline != null) {
+            if(newSize == 0) {
+                inline = null;
+            } else {
+                Arrays.fill(inline, (int) newSize, INLINE_SIZE, (byte) 0);
+            }
+        } else if(blocks != null) {
+            int blocksNeeded = (int) ((newSize + BLOCK_SIZE - 1) / BLOCK_SIZE);
+            List<Block> removed = blocks.removeFrom(blocksNeeded);
+            if(!removed.isEmpty()) {
+                fs.getBlockAllocator().release(this, removed, blocks.getAllocatedCount() == 0);
+            }
+            //zero the tail of the last block, if the file is extended
+            //later those bytes must read as 0
+            int offset = (int) (newSize % BLOCK_SIZE);
+            if(offset != 0 && blocks.get(blocksNeeded - 1) != null) {
+                writableBlock(blocksNeeded - 1).zero(offset, BLOCK_SIZE);
+            }
+            if(blocks.getAllocatedCount() == 0) {
+                blocks = null;
+            }
+        }
+        try {
+            setAllocatedSpace(allocatedSpace(
+                    newSize, 
+                    allocatedBlockCount(), 
+                    isAllocated(lastBlock(newSize))));
+        } catch (IOException e) {
+            //we are always freeing space, so we shouldn't throw
+            throw new IllegalStateException(e);
         }
-        contents = newContents;
     }
     
-    public ByteBuffer getContents() {
-        return contents;
+    /**
+     * Replace the contents of this file with the contents of source.<P>
+     * 
+     * Blocks are shared with source rather than copied, and are only
+     * copied when either file writes to them.
+     */
+    public void copyFrom(FileContents source) throws IOException {
+        BlockTable shared;
+        byte[] sharedInline;
+        long sourceSize;
+        long sourceAllocatedSpace;
+        source.lock.readLock().lock();
+        try {
+            sourceSize = source.size;
+            sourceAllocatedSpace = source.allocatedSpace;
+            shared = source.blocks == null ? null : source.blocks.share();
+            sharedInline = source.inline == null ? null : source.inline.clone();
+        } finally {
+            source.lock.readLock().unlock();
+        }
+        lock.writeLock().lock();
+        try {
+            truncate(0);
+            try {
+                if(shared != null) {
+                    fs.getBlockAllocator().adopt(this);
+                }
+                setAllocatedSpace(sourceAllocatedSpace);
+            } catch(IOException | RuntimeException e) {
+                if(shared != null) {
+                    fs.getBlockAllocator().release(this, shared.removeFrom(0), true);
+                }
+                throw e;
+            }
+            blocks = shared;
+            inline = sharedInline;
+            size = sourceSize;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Release the disk space and memory used by this file.  Called when
+     * the file is no longer reachable, or the file system is closed.
+     */
+    public void free() {
+        lock.writeLock().lock();
+        try {
+            truncate(0);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * The disk space used by a file, holes don't use space, and 
+     * space after the end of the file in the last block is not counted.
+     */
+    private static long allocatedSpace(long fileSize, int allocatedBlocks, boolean lastBlockAllocated) {
+        long answer = (long) allocatedBlocks * BLOCK_SIZE;
+        long tail = fileSize % BLOCK_SIZE;
+        if(tail != 0 && lastBlockAllocated) {
+            answer -= BLOCK_SIZE - tail;
+        }
+        return answer;
+    }
+    
+    private static int lastBlock(long fileSize) {
+        return fileSize == 0 ? -1 : blockIndex(fileSize - 1);
+    }
+    
+    private static int blockIndex(long position) {
+        return (int) (position / BLOCK_SIZE);
+    }
+    
+    private void setAllocatedSpace(long newAllocatedSpace) throws IOException {
+        if(newAllocatedSpace > allocatedSpace) {
+            fs.getLimits().tryAcquireDiskSpace(newAllocatedSpace - allocatedSpace);
+        } else if(newAllocatedSpace < allocatedSpace) {
+            fs.getLimits().releaseDiskSpace(allocatedSpace - newAllocatedSpace);
+        }
+        allocatedSpace = newAllocatedSpace;
+    }
+    
+    /**
+     * The number of allocated blocks, inline contents count as a block
+     */
+    private int allocatedBlockCount() {
+        if(blocks != null) {
+            return blocks.getAllocatedCount();
+        }
+        return inline == null ? 0 : 1;
+    }
+    
+    private boolean isAllocated(int index) {
+        if(blocks != null) {
+            return blocks.get(index) != null;
+        }
+        return index == 0 && inline != null;
+    }
+    
+    /**
+     * Get the block at index for writing, allocating it if needed, 
+     * or copying it if it is shared with another file.
+     */
+    private Block writableBlock(int index) {
+        if(blocks == null) {
+            blocks = new BlockTable();
+            if(inline != null) {
+                //we have outgrown inline storage
+                Block first = fs.getBlockAllocator().allocate(this, BLOCK_SIZE);
+                first.write(ByteBuffer.wrap(inline), 0, INLINE_SIZE);
+                blocks.set(0, first);
+                inline = null;
+            }
+        }
+        Block block = blocks.get(index);
+        if(block == null) {
+            block = fs.getBlockAllocator().allocate(this, BLOCK_SIZE);
+            blocks.set(index, block);
+        } else if(block.isShared()) {
+            Block copy = fs.getBlockAllocator().allocate(this, BLOCK_SIZE);
+            block.copyTo(copy);
+            blocks.set(index, copy);
+            fs.getBlockAllocator().release(this, Collections.singletonList(block), false);
+            block = copy;
+        }
+        return block;
     }
 
     public FileLock tryLock(Channel channel, long start, long size, boolean shared) throws IOException{
@@ -148,6 +514,9 @@ class FileContents {
             throw new ClosedChannelException();
         }
         
+        if(locks == null) {
+            locks = new ArrayList<>();
+        }
         Iterator<EphemeralFsFileLock> iter = locks.iterator();
         while(iter.hasNext()) {
             EphemeralFsFileLock oldLock = iter.next();
@@ -167,21 +536,37 @@ class FileContents {
     
     }
 
-    public int getSize() {
-        synchronized(lock) {
+    public long getSize() {
+        lock.readLock().lock();
+        try {
             return size;
+        } finally {
+            lock.readLock().unlock();
         }
     }
 
     public void setDirty(boolean dirty) {
-        synchronized(lock) {
-            this.isDirty = dirty;
-        }
+        this.isDirty = dirty;
     }
 
     public boolean isDirty() {
-        synchronized(lock) {
-            return isDirty;
+        return isDirty;
+    }
+    
+    /**
+     * A read only view of part of the file contents.
+     */
+    static final class View {
+        private final ByteBuffer buffer;
+        private final Block pinned;
+        
+        View(ByteBuffer buffer, Block pinned) {
+            this.buffer = buffer;
+            this.pinned = pinned;
+        }
+        
+        public ByteBuffer getBuffer() {
+            return buffer;
         }
     }
-}
\ No newline at end of file
+}
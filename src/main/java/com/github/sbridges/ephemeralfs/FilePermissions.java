@@ -37,7 +37,9 @@ import java.util.Set;
 
 class FilePermissions {
 
-    private final EnumSet<PosixFilePermission> permissions;
+    //never mutated after publication, changes replace the
+    //whole set so permissions can be read without a lock
+    private volatile EnumSet<PosixFilePermission> permissions;
 
     public static FilePermissions createDefaultFile() {
         return new FilePermissions(EnumSet.of(
@@ -88,17 +90,18 @@ class FilePermissions {
     }
 
     public void copyFrom(FilePermissions other) {
-        this.permissions.clear();
-        this.permissions.addAll(other.permissions);
+        this.permissions = EnumSet.copyOf(other.permissions);
     }
 
     public boolean canRead() {
+        EnumSet<PosixFilePermission> permissions = this.permissions;
         return permissions.contains(PosixFilePermission.OWNER_READ) ||
                 permissions.contains(PosixFilePermission.GROUP_READ)||
                 permissions.contains(PosixFilePermission.OTHERS_READ);
     }
 
     public boolean canWrite() {
+        EnumSet<PosixFilePermission> permissions = this.permissions;
         return permissions.contains(PosixFilePermission.OWNER_WRITE) ||
                 permissions.contains(PosixFilePermission.GROUP_WRITE)||
                 permissions.contains(PosixFilePermission.OTHERS_WRITE);
@@ -106,6 +109,7 @@ class FilePermissions {
     }
 
     public boolean canExecute() {
+        EnumSet<PosixFilePermission> permissions = this.permissions;
         return permissions.contains(PosixFilePermission.OWNER_EXECUTE) ||
                 permissions.contains(PosixFilePermission.GROUP_EXECUTE)||
                 permissions.contains(PosixFilePermission.OTHERS_EXECUTE);
@@ -139,8 +143,9 @@ class FilePermissions {
     }
 
     public void setPermissions(Set<PosixFilePermission> perms) {
-        permissions.clear();
-        permissions.addAll(perms);
-        
+        EnumSet<PosixFilePermission> newPermissions = EnumSet
+                .noneOf(PosixFilePermission.class);
+        newPermissions.addAll(perms);
+        permissions = newPermissions;
     }
 }
@@ -39,16 +39,20 @@ class FileProperties {
     private static final AtomicLong iNodeCounter = new AtomicLong();
     
     private final Long iNodeNumber =  iNodeCounter.incrementAndGet();
-    private FilePermissions filePermissions;
+    //properties are changed while holding the file system
+    //read lock, and are read without any lock, each is
+    //set with a single write, so they are all volatile
+    private volatile FilePermissions filePermissions;
     
     private final EphemeralFsFileTimes fileTimes = new EphemeralFsFileTimes();
     
-    private boolean dosIsArchive = false;
-    private boolean dosIsHidden = false;
-    private boolean dosIsReadOnly = false;
-    private boolean dosIsSystem = false;
-    private EphemeralFsUserPrincipal owner;
-    private EphemeralFsGroupPrincipal group;
+    //also set by writes without holding the file system lock
+    private volatile boolean dosIsArchive = false;
+    private volatile boolean dosIsHidden = false;
+    private volatile boolean dosIsReadOnly = false;
+    private volatile boolean dosIsSystem = false;
+    private volatile EphemeralFsUserPrincipal owner;
+    private volatile EphemeralFsGroupPrincipal group;
     private final EphemeralFsFileSystem fs;
     
     public FileProperties(EphemeralFsFileSystem fs, FilePermissions filePermissions, boolean isFile) {
@@ -42,28 +42,70 @@ import java.nio.file.StandardOpenOption;
 import java.nio.file.StandardWatchEventKinds;
 import java.nio.file.attribute.PosixFilePermission;
 import java.util.ArrayDeque;
-import java.util.ArrayList;
 import java.util.Deque;
-import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * A file or a directory. 
  */
 class INode {
     
+    /**
+     * A directory entry that refers to an INode, 
+     * seen from the INode
+     */
+    static final class ParentLink {
+        final INode parent;
+        final FileName name;
+        
+        ParentLink(INode parent, FileName name) {
+            this.parent = parent;
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return "ParentLink[name=" + name + "]";
+        }
+    }
+    
     //only set if this is a directory
+    //modified while holding the file system read lock 
+    //and our directory lock,
+    //concurrent so lookups can be done without any lock
     private final Map<FileName, DirectoryEntry> children;
+    //only set if this is a directory, see lockDirectory()
+    private final ReentrantLock directoryLock;
     //this is set if this is a directory, allows
     private final FileContents contents;
     private final EphemeralFsFileSystem fs;
-    private final List<INode> parents = new ArrayList<>();
+    //the directory entries that refer to us, an
+    //inode with hard links has more than one,
+    //copy on write so we can check if a parent is watched
+    //without holding the file system lock
+    private final List<ParentLink> parents = new CopyOnWriteArrayList<>();
     private final boolean root;
+    //the number of watch keys registered on this directory, 
+    //only modified by the WatchRegistry
+    private volatile int watchCount;
     
     
-    private int hardLinks = -1;
+    //volatile since stats read this without the file system lock,
+    //guarded by this, as links to us can be added or removed
+    //in different directories at the same time
+    private volatile int hardLinks = -1;
+    //incremented after an entry is removed from this directory,
+    //cached path resolutions through this directory are only
+    //valid while this is unchanged, only written while holding
+    //the same locks as children
+    private volatile int removals;
+    //guarded by this
     private int openFileHandles;
     
     private final FileProperties fileProperties;
@@ -77,6 +119,7 @@ class INode {
             FilePermissions filePermissions,
             boolean root) {
         this.children = children;
+        this.directoryLock = new ReentrantLock();
         //NOTE - in unix we can read the contents of a directory
         //for java this has no effect other than allowing
         //fsyncing the directory
@@ -94,6 +137,7 @@ class INode {
     private INode(EphemeralFsFileSystem fileSystem, FilePermissions filePermissions) {
         this.contents = new FileContents(fileSystem, this);
         this.children = null;
+        this.directoryLock = null;
         this.fs = fileSystem;
         this.root = false;
         this.fileProperties = new FileProperties(fileSystem, filePermissions, true);
@@ -101,19 +145,33 @@ class INode {
     }
 
     static INode createRoot(EphemeralFsFileSystem fileSystem) {
-        return new INode(new HashMap<FileName, DirectoryEntry>(), fileSystem, FilePermissions.createDefaultDirectory(), true);
+        return new INode(new ConcurrentHashMap<FileName, DirectoryEntry>(), fileSystem, FilePermissions.createDefaultDirectory(), true);
+    }
+    
+    /**
+     * Create a file that is not yet in any directory
+     */
+    static INode newFile(EphemeralFsFileSystem fileSystem, FilePermissions filePermissions) {
+        return new INode(fileSystem, filePermissions);
+    }
+    
+    /**
+     * Create a directory that is not yet in any directory
+     */
+    static INode newDir(EphemeralFsFileSystem fileSystem, FilePermissions filePermissions) {
+        return new INode(new ConcurrentHashMap<FileName, DirectoryEntry>(), fileSystem, filePermissions, false);
     }
     
     public INode addFile(EphemeralFsPath name, FilePermissions filePermissions) throws IOException {
         assertCanAddChild(name);
-        INode answer = new INode(fs, filePermissions);
+        INode answer = newFile(fs, filePermissions);
         add(name, answer);
         return answer;
     }
     
     public INode addDir(EphemeralFsPath name, FilePermissions filePermissions) throws IOException {
         assertCanAddChild(name);
-        INode answer = new INode(new HashMap<FileName, DirectoryEntry>(), fs, filePermissions, false);
+        INode answer = newDir(fs, filePermissions);
         add(name, answer);
         return answer;
     }
@@ -121,10 +179,12 @@ class INode {
     public void add(EphemeralFsPath name, INode child) throws IOException {
         assertCanAddChild(name);
         children.put(name.toFileName(), new DirectoryEntry(child));
-        child.parents.add(this);
+        child.parents.add(new ParentLink(this, name.toFileName()));
         child.addLink();
-        EphemeralFsWatchEvent event = new EphemeralFsWatchEvent(name, StandardWatchEventKinds.ENTRY_CREATE);
-        fs.getWatchRegistry().hearChange(this,  event);
+        if(isWatched()) {
+            EphemeralFsWatchEvent event = new EphemeralFsWatchEvent(name, StandardWatchEventKinds.ENTRY_CREATE);
+            fs.getWatchRegistry().hearChange(this,  event);
+        }
         contents.setDirty(true);
     }
     
@@ -138,14 +198,67 @@ class INode {
         if(entry == null) {
             throw new IllegalStateException("removing but nothing exists, name:" + name);
         }
-        if(!entry.isSymbolicLink() && !entry.getDestination().parents.remove(this)) {
+        removals++;
+        if(!entry.isSymbolicLink() && !entry.getDestination().removeParent(this, name.toFileName())) {
             throw new IllegalStateException("failed to remove parent? this:" + this + " entry:" + entry);
         }
         if(entry.getDestination() != null) {
             entry.getDestination().removeLink();
         }
-        EphemeralFsWatchEvent event = new EphemeralFsWatchEvent(name, StandardWatchEventKinds.ENTRY_DELETE);
-        fs.getWatchRegistry().hearChange(this, event);
+        if(isWatched()) {
+            EphemeralFsWatchEvent event = new EphemeralFsWatchEvent(name, StandardWatchEventKinds.ENTRY_DELETE);
+            fs.getWatchRegistry().hearChange(this, event);
+        }
+        contents.setDirty(true);
+    }
+    
+    /**
+     * Replace the existing entry for name with child.  Lookups without
+     * a lock see either the old entry or child, never no entry.
+     */
+    public void replace(EphemeralFsPath name, INode child) {
+        replace(name, new DirectoryEntry(child));
+    }
+    
+    /**
+     * Replace the existing entry for name with a symbolic link to to.
+     */
+    public void replaceWithSymlink(EphemeralFsPath name, EphemeralFsPath to) throws IOException {
+        if(!fs.getSettings().allowSymlink()) {
+            throw new FileSystemException("symlinks are not supported");
+        }
+        replace(name, new DirectoryEntry(to));
+    }
+    
+    private void replace(EphemeralFsPath name, DirectoryEntry entry) {
+        if(!isDir()) {
+            throw new IllegalStateException();
+        }
+        assertOnlyFileName(name);
+        
+        FileName fileName = name.toFileName();
+        INode child = entry.getDestination();
+        if(child != null) {
+            child.parents.add(new ParentLink(this, fileName));
+            child.addLink();
+        }
+        DirectoryEntry existing = children.put(fileName, entry);
+        if(existing == null) {
+            throw new IllegalStateException("replacing but nothing exists, name:" + name);
+        }
+        removals++;
+        if(!existing.isSymbolicLink() && !existing.getDestination().removeParent(this, fileName)) {
+            throw new IllegalStateException("failed to remove parent? this:" + this + " entry:" + existing);
+        }
+        if(existing.getDestination() != null) {
+            existing.getDestination().removeLink();
+        }
+        if(isWatched()) {
+            fs.getWatchRegistry().hearChange(this, 
+                    new EphemeralFsWatchEvent(name, StandardWatchEventKinds.ENTRY_DELETE));
+            fs.getWatchRegistry().hearChange(this, 
+                    new EphemeralFsWatchEvent(name, StandardWatchEventKinds.ENTRY_CREATE));
+        }
         contents.setDirty(true);
     }
     
@@ -167,11 +280,11 @@ class INode {
                 new DirectoryEntry(to));
     }
     
-    public void addOpenFileHandle() { 
+    public synchronized void addOpenFileHandle() { 
         openFileHandles++;
     }
     
-    public void removeOpenFileHandle() {
+    public synchronized void removeOpenFileHandle() {
         openFileHandles--;
         if(openFileHandles < 0) {
             throw new IllegalStateException();
@@ -198,15 +311,89 @@ class INode {
                 //an orphaned directory, fail
                 return null;
             } else {
-                INode last = current;
-                current = current.parents.get(0);
-                for(Map.Entry<FileName, DirectoryEntry> entry : current.children.entrySet()) {
-                    if(entry.getValue().getDestination() == last) {
-                        paths.addFirst(entry.getKey().getPath().toString());
-                    }
-                }
+                ParentLink link = current.parents.get(0);
+                paths.addFirst(link.name.getPath().toString());
+                current = link.parent;
+            }
+        }
+    }
+    
+    /**
+     * The number of directories between us and the root, 
+     * or the top of an orphaned directory.  
+     */
+    int getDepth() {
+        int answer = 0;
+        INode current = this;
+        while(current != fs.getRoot()) {
+            ParentLink link = current.firstParent();
+            if(link == null) {
+                break;
+            }
+            answer++;
+            current = link.parent;
+        }
+        return answer;
+    }
+    
+    /**
+     * Is this dir, or inside dir.  Follows only the 
+     * first parent, so use for directories.
+     */
+    boolean isInside(INode dir) {
+        INode current = this;
+        while(true) {
+            if(current == dir) {
+                return true;
+            }
+            ParentLink link = current.firstParent();
+            if(current == fs.getRoot() || link == null) {
+                return false;
+            }
+            current = link.parent;
+        }
+    }
+    
+    /**
+     * Our first parent, or null if we have none, parents may
+     * be removed concurrently so check with this rather than isEmpty()
+     */
+    private ParentLink firstParent() {
+        Iterator<ParentLink> iter = parents.iterator();
+        return iter.hasNext() ? iter.next() : null;
+    }
+    
+    /**
+     * Would name resolved against our path to root be
+     * longer than the max path length.  This does not build the path. 
+     */
+    private boolean isPathTooLong(EphemeralFsPath name) {
+        long maxPathLength = fs.getSettings().getMaxPathLength();
+        if(maxPathLength == Long.MAX_VALUE) {
+            return false;
+        }
+        long length = fs.getSettings().getRoot().length() + name.toString().length();
+        INode current = this;
+        while(current != fs.getRoot()) {
+            if(current.parents.isEmpty()) {
+                //an orphaned directory, there is no path
+                return false;
             }
+            ParentLink link = current.parents.get(0);
+            //the name, and the separator after it
+            length += link.name.getPath().toString().length() + 1;
+            current = link.parent;
         }
+        return length > maxPathLength;
+    }
+    
+    private boolean removeParent(INode parent, FileName name) {
+        for(ParentLink link : parents) {
+            if(link.parent == parent && link.name.equals(name)) {
+                return parents.remove(link);
+            }
+        }
+        return false;
     }
     
     private void assertCanAddChild(EphemeralFsPath name) throws IOException {
@@ -216,8 +403,7 @@ class INode {
         if(name.toString().equals(".") || name.toString().equals("..")) {
             throw new IllegalStateException("invalid path:" + name);
         }
-        if(fs.getSettings().getMaxPathLength() != Long.MAX_VALUE &&
-                getPathToRoot().resolve(name).toString().length() > fs.getSettings().getMaxPathLength()) {
+        if(isPathTooLong(name)) {
             throw new FileSystemException("Path too long");
         }
         
@@ -239,21 +425,46 @@ class INode {
         return !isFile();
     }
 
+    /**
+     * Lock this directory to add or remove entries while holding
+     * the file system read lock.<P>
+     * 
+     * To avoid deadlock, operations that change more than one 
+     * directory, such as move, must lock them in the order 
+     * EphemeralFsFileSystem.lockDirectories() uses, a directory 
+     * is always locked before any directory it contains.
+     */
+    void lockDirectory() {
+        if(!isDir()) {
+            throw new IllegalStateException("not a directory");
+        }
+        directoryLock.lock();
+    }
+    
+    void unlockDirectory() {
+        directoryLock.unlock();
+    }
+    
+    /**
+     * The number of entries ever removed from this directory, this
+     * must be read before looking up a child to detect that the 
+     * lookup is no longer valid.
+     */
+    int getRemovals() {
+        return removals;
+    }
+
     public DirectoryEntry resolve(EphemeralFsPath name) {
         assertOnlyFileName(name);
         if(isFile()) { 
             return null;
         }
         
-        FileName key = name.toFileName();
-        if(!children.containsKey(key)) {
-            return null;
-        }
-        return children.get(key);
+        return children.get(name.toFileName());
     }
     
     public FileAttributesSnapshot getAttributes() throws IOException {
-        int size;
+        long size;
         if(isFile()) {
             size = contents.getSize();
         }
@@ -277,18 +488,60 @@ class INode {
     /**
      * Note, this is not the size attribute!  directories have size 
      */
-    public int getContentsSize() {
+    public long getContentsSize() {
         if(!isFile()) {
             throw new IllegalStateException();
         }
         return contents.getSize();
     }
     
+    /**
+     * Replace the contents of this file with the contents of source
+     */
+    public void copyContents(INode source) throws IOException {
+        if(!isFile() || !source.isFile()) {
+            throw new IllegalStateException();
+        }
+        contents.copyFrom(source.contents);
+    }
+    
     public FileProperties getProperties() {
         return fileProperties;
     }
 
+    void addWatch() {
+        watchCount++;
+    }
+    
+    void removeWatch() {
+        watchCount--;
+    }
+    
+    /**
+     * @return true if a watch key is registered on this directory
+     */
+    public boolean isWatched() {
+        return watchCount > 0;
+    }
+    
+    /**
+     * A change to this inode can only be heard by watches on 
+     * a directory containing this inode, this can be called
+     * without holding the file system lock.
+     */
+    public boolean hasWatchedParent() {
+        for(ParentLink link : parents) {
+            if(link.parent.isWatched()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public void notifyChange(EphemeralFsPath path) throws NoSuchFileException {
+        if(!hasWatchedParent()) {
+            return;
+        }
         ResolvedPath resolvedPath;
         try {
             resolvedPath = ResolvedPath.resolve(path.getParent(), false);
@@ -301,13 +554,19 @@ class INode {
             return;
         }
         
-        if(resolvedPath.getTarget().isDir() && 
-           resolvedPath.getTarget().getName(this) != null) {
+        INode directory = resolvedPath.getTarget();
+        if(!directory.isDir() || !directory.isWatched()) {
+            return;
+        }
+        //use the name we were changed through if it still 
+        //refers to us, otherwise our current name in the directory
+        EphemeralFsPath name = directory.getName(this, path.getFileName());
+        if(name != null) {
             EphemeralFsWatchEvent event = new EphemeralFsWatchEvent(
-                    path, 
+                    name == path.getFileName() ? path : path.resolveSibling(name), 
                     StandardWatchEventKinds.ENTRY_MODIFY);
             
-            fs.getWatchRegistry().hearChange(resolvedPath.getTarget(), event);    
+            fs.getWatchRegistry().hearChange(directory, event);    
         }
     }
 
@@ -369,15 +628,33 @@ class INode {
         return children.isEmpty();
     }
 
-    public Iterable<EphemeralFsPath> getChildNames() {
+    /**
+     * Iterate over the names of our children.  This is a live view, 
+     * nothing is copied, and iteration is weakly consistent, it never
+     * blocks or fails if the directory is changed while iterating.
+     */
+    public Iterator<EphemeralFsPath> iterateChildNames() {
         if(!isDir()) {
             throw new IllegalStateException();
         }
-        List<EphemeralFsPath> answer = new ArrayList<>(children.size());
-        for(FileName f : children.keySet()) {
-            answer.add(f.getPath());
-        }
-        return answer;
+        final Iterator<FileName> names = children.keySet().iterator();
+        return new Iterator<EphemeralFsPath>() {
+
+            @Override
+            public boolean hasNext() {
+                return names.hasNext();
+            }
+
+            @Override
+            public EphemeralFsPath next() {
+                return names.next().getPath();
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
     }
     
     public boolean exists() {
@@ -387,8 +664,8 @@ class INode {
         if(parents.isEmpty()) {
             return false;
         }
-        for(INode parent : parents) {
-            if(parent.exists()) {
+        for(ParentLink link : parents) {
+            if(link.parent.exists()) {
                 return true;
             }
         }
@@ -406,20 +683,39 @@ class INode {
 
     /**
      * Get the name of the given INode in this directory, or null
-     * if there is no name. 
+     * if there is no name.  If the INode is hard linked more than
+     * once in this directory, any of its names may be returned. 
      */
     public EphemeralFsPath getName(INode iNode) {
+        return getName(iNode, null);
+    }
+    
+    /**
+     * Get the name of the given INode in this directory, or null
+     * if there is no name.  If preferred is one of the names
+     * of iNode in this directory, preferred is returned.<P>
+     * 
+     * This looks at the links of iNode, not our children, so the
+     * cost is independent of how big this directory is.
+     */
+    public EphemeralFsPath getName(INode iNode, EphemeralFsPath preferred) {
         if(!isDir()) {
             throw new IllegalStateException("not a dir");
         }
-        //TODO - the INOde can exist multiple times if it was hardlinked
-        //multiple times
-        for(Map.Entry<FileName, DirectoryEntry> e : children.entrySet()) {
-            if(e.getValue().getDestination() == iNode) {
-                return e.getKey().getPath();
+        FileName preferredName = preferred == null ? null : preferred.toFileName();
+        EphemeralFsPath answer = null;
+        for(ParentLink link : iNode.parents) {
+            if(link.parent != this) {
+                continue;
+            }
+            if(link.name.equals(preferredName)) {
+                return preferred;
+            }
+            if(answer == null) {
+                answer = link.name.getPath();
             }
         }
-        return null;
+        return answer;
     }
    
     @Override
@@ -487,7 +783,7 @@ class INode {
         return fs;
     }
 
-    private void addLink() {
+    private synchronized void addLink() {
         if(hardLinks == -1) {
             hardLinks = 1;
             return;
@@ -504,7 +800,7 @@ class INode {
         hardLinks++;
     }
     
-    void removeLink() {
+    synchronized void removeLink() {
         hardLinks--;
         if(hardLinks < 0) {
             throw new IllegalStateException("negative links?");
@@ -514,7 +810,7 @@ class INode {
 
     private void freeIfNoReferences() {
         if(contents != null && hardLinks == 0 && openFileHandles == 0) {
-            fs.getLimits().releaseDiskSpace(contents.getSize());
+            contents.free();
         }
         
     }
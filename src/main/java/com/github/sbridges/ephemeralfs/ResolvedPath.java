@@ -34,8 +34,9 @@ import java.nio.file.FileSystemLoopException;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.util.AbstractList;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
 
 /**
@@ -44,6 +45,10 @@ import java.util.List;
  */
 class ResolvedPath {
     
+    //the most symbolic links we follow resolving a path 
+    //before giving up, this is the same as linux
+    static final int MAX_SYMLINK_HOPS = 40;
+    
     static class ResolvedStep {
         //the directory for this step
         //the first step will have the root
@@ -71,122 +76,148 @@ class ResolvedPath {
         }
     }
     
+    /**
+     * A directory we looked up a child in, and how many entries
+     * had been removed from the directory before the lookup
+     */
+    static class DirectoryLookup {
+        final INode directory;
+        final int removals;
+        
+        public DirectoryLookup(INode directory) {
+            this.directory = directory;
+            this.removals = directory.getRemovals();
+        }
+    }
+    
     public static ResolvedPath resolve(EphemeralFsPath path) throws FileSystemException {
         return resolve(path, false);
     }
     
     public static ResolvedPath resolve(EphemeralFsPath path, boolean noFollowLastSymlink) throws FileSystemException {
         
-        try {
-            
-            if(!path.isAbsolute()) {
-                Path rootPath = path.getFileSystem().getRootPath();
-                return resolve((EphemeralFsPath) rootPath.resolve(path), noFollowLastSymlink);
-            }
-            
-            //if we look for existing/nonExistent/..
-            //windows resolves this by skipping looking
-            //up nonExistent, 
-            //linux will fail though when it sees the nonExistent Directory
-            if(!path.getFileSystem().getSettings().isPosix()) {
-                path = path.normalize();
-            }
-            
-            List<EphemeralFsPath> parts = new ArrayList<>(path.splitPaths());
-            Collections.reverse(parts);
-            List<ResolvedStep> steps = new ArrayList<>(parts.size());
-            
-            return resolveAbsolutePath(path, path.getFileSystem(), path.getFileSystem().getRoot(), parts, steps, noFollowLastSymlink);
-        } catch(StackOverflowError e) {
-            //recursive links
-            throw new FileSystemLoopException(path +  ": Too many levels of symbolic links");
+        if(!path.isAbsolute()) {
+            Path rootPath = path.getFileSystem().getRootPath();
+            return resolve((EphemeralFsPath) rootPath.resolve(path), noFollowLastSymlink);
         }
+        
+        //if we look for existing/nonExistent/..
+        //windows resolves this by skipping looking
+        //up nonExistent, 
+        //linux will fail though when it sees the nonExistent Directory
+        if(!path.getFileSystem().getSettings().isPosix()) {
+            path = path.normalize();
+        }
+        
+        ResolvedPathCache cache = path.getFileSystem().getResolvedPathCache();
+        String key = path.toString();
+        ResolvedPath cached = cache.get(key, noFollowLastSymlink);
+        if(cached != null) {
+            return cached;
+        }
+        
+        ResolvedPath answer = resolveAbsolutePath(path, path.getFileSystem(), noFollowLastSymlink);
+        cache.put(key, noFollowLastSymlink, answer);
+        return answer;
     }
 
-    //the recursion for this method is deliberate, it allows us
-    //to detect recursive symlinks via stack overflow
     private static ResolvedPath resolveAbsolutePath(
-            EphemeralFsPath oiginalPath,
+            EphemeralFsPath originalPath,
             EphemeralFsFileSystem fs,
-            //the current directory
-            //that parts will be resolved from
-            INode current,
-            //the parts of the path that must still be resolved
-            //in reverse order
-            List<EphemeralFsPath> remaining,
-            //the steps we have already resolved
-            List<ResolvedStep> steps,
             boolean noFollowLastSymlink) throws FileSystemException {
         
-        if(remaining.isEmpty()) {
-            return new ResolvedPath(fs, steps, current, null, !steps.isEmpty());
-        }
+        List<EphemeralFsPath> parts = originalPath.splitPaths();
+        //the parts of the path that must still be resolved
+        //the next part to resolve is on top
+        Deque<EphemeralFsPath> remaining = new ArrayDeque<>(parts.size());
+        pushAll(remaining, parts);
+        //the steps we have already resolved
+        List<ResolvedStep> steps = new ArrayList<>(parts.size());
+        //every directory we have looked up a child in
+        List<DirectoryLookup> lookups = new ArrayList<>(parts.size());
+        //the directory that remaining will be resolved from
+        INode current = fs.getRoot();
+        int symlinkHops = 0;
         
-        EphemeralFsPath currentPath = remaining.remove(remaining.size() -1);
-        String fileName = currentPath.toString();
+        while(!remaining.isEmpty()) {
+            EphemeralFsPath currentPath = remaining.pop();
+            String fileName = currentPath.toString();
 
-        if(fileName.equals(".")) {
-            if(!current.isDir()) {
-                throw new FileSystemException(oiginalPath + ": Not a directory");
+            if(fileName.equals(".")) {
+                if(!current.isDir()) {
+                    throw new FileSystemException(originalPath + ": Not a directory");
+                }
+                continue;
             }
-            return resolveAbsolutePath(oiginalPath, fs, current, remaining, steps, noFollowLastSymlink);
-        }
-        else if(fileName.equals("..")) {
-            if(!current.isDir()) {
-                throw new FileSystemException(oiginalPath + ": Not a directory");
+            else if(fileName.equals("..")) {
+                if(!current.isDir()) {
+                    throw new FileSystemException(originalPath + ": Not a directory");
+                }
+                //we always have the root as the first step
+                //
+                if(steps.isEmpty()) {
+                    //we are trying to .. above the root
+                    //use root to explore
+                    //on linux, ls /../tmp will list /tmp
+                    current = fs.getRoot();
+                } else {
+                    current = steps.remove(steps.size() - 1).directory;
+                }
+                continue;
             }
-            //we always have the root as the first step
-            //
-            if(steps.isEmpty()) {
-                //we are trying to .. above the root
-                //use root to explore
-                //on linux, ls /../tmp will list /tmp
-                return resolveAbsolutePath(oiginalPath, fs, fs.getRoot(), remaining, steps, noFollowLastSymlink);
+            
+            DirectoryEntry entry = null;
+            if(current.isDir()) {
+                //record before the lookup, so a concurrent
+                //remove is noticed
+                lookups.add(new DirectoryLookup(current));
+                entry = current.resolve(currentPath);
             }
-            ResolvedStep parent = steps.remove(steps.size() - 1);
-            return resolveAbsolutePath(oiginalPath, fs, parent.directory, remaining, steps, noFollowLastSymlink);
-        }
-        
-        if(current.isDir()) {
-            DirectoryEntry entry = current.resolve(currentPath);
-            if(entry != null) {
-                if(entry.isSymbolicLink()) {
-                    if(noFollowLastSymlink && remaining.isEmpty()) {
-                        steps.add(new ResolvedStep(current, fileName));
-                        return new ResolvedPath(fs, steps, null, entry, true);
-                    }
-                    EphemeralFsPath linkTarget = entry.getSymbolicLink();
-                    EphemeralFsPath absolutePathSoFar = getPaths(fs, steps);
-                    List<EphemeralFsPath> newParts = absolutePathSoFar.resolve(linkTarget).splitPaths();
-                    for(int i = newParts.size() -1; i >= 0; i--) {
-                        remaining.add(newParts.get(i));
-                    }
-                    //we have a new absolute path to resolve
-                    //start over
-                    steps.clear();
-                    return resolveAbsolutePath(oiginalPath, fs, fs.getRoot(), remaining, steps, noFollowLastSymlink);
-                }
+            if(entry == null) {
+                //we can't resolve everything, stop
+                //what we have resolved is still useful
+                //for example resolving a non existing
+                //path which we want to create
                 steps.add(new ResolvedStep(current, fileName));
-                return resolveAbsolutePath(oiginalPath, fs, entry.getDestination(), remaining, steps, noFollowLastSymlink);
+                return new ResolvedPath(fs, steps, lookups, null, null, remaining.isEmpty());
             }
-        } 
-
-        //we can't resolve everything, stop
-        //what we have resolved is still useful
-        //for example resolving a non existing
-        //path which we want to create
-        steps.add(new ResolvedStep(current, fileName));
-        if(remaining.isEmpty()) {
-            return new ResolvedPath(fs, steps, null, null, true);
-        } else {
-            return new ResolvedPath(fs, steps, null, null, false);    
+            
+            if(entry.isSymbolicLink()) {
+                if(noFollowLastSymlink && remaining.isEmpty()) {
+                    steps.add(new ResolvedStep(current, fileName));
+                    return new ResolvedPath(fs, steps, lookups, null, entry, true);
+                }
+                if(++symlinkHops > MAX_SYMLINK_HOPS) {
+                    throw new FileSystemLoopException(originalPath +  ": Too many levels of symbolic links");
+                }
+                EphemeralFsPath linkTarget = entry.getSymbolicLink();
+                EphemeralFsPath absolutePathSoFar = getPaths(fs, steps);
+                pushAll(remaining, absolutePathSoFar.resolve(linkTarget).splitPaths());
+                //we have a new absolute path to resolve
+                //start over
+                steps.clear();
+                current = fs.getRoot();
+                continue;
+            }
+            steps.add(new ResolvedStep(current, fileName));
+            current = entry.getDestination();
+        }
+        return new ResolvedPath(fs, steps, lookups, current, null, !steps.isEmpty());
+    }
+    
+    /**
+     * Push parts so that the first part is on the top of the stack
+     */
+    private static void pushAll(Deque<EphemeralFsPath> stack, List<EphemeralFsPath> parts) {
+        for(int i = parts.size() - 1; i >= 0; i--) {
+            stack.push(parts.get(i));
         }
-        
     }
     
     //the steps we successfully took resolving the
     //path
     private final List<ResolvedStep> steps;
+    private final List<DirectoryLookup> lookups;
     private final INode target;
     private final DirectoryEntry symlinkDirectoryEntry;
     //was everything but the parent resolved
@@ -201,12 +232,14 @@ class ResolvedPath {
     private ResolvedPath(
             EphemeralFsFileSystem fs,
             List<ResolvedStep> steps,
+            List<DirectoryLookup> lookups,
             INode target,
             DirectoryEntry symlinkDirectoryEntry,
             boolean hasValidParent
             ) {
         this.fs = fs;
         this.steps = steps;
+        this.lookups = lookups;
         this.target = target;
         this.symlinkDirectoryEntry = symlinkDirectoryEntry;
         this.hasValidParent = hasValidParent;
@@ -216,6 +249,48 @@ class ResolvedPath {
         return hasTarget() || resolvedToSymbolicLink();
     }
     
+    /**
+     * Would resolving the path again give the same result.<P>
+     * 
+     * False if an entry was removed from any directory we looked
+     * in while resolving, this may be a false negative.
+     */
+    boolean isStillValid() {
+        for(int i = 0; i < lookups.size(); i++) {
+            DirectoryLookup lookup = lookups.get(i);
+            if(lookup.directory.getRemovals() != lookup.removals) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * We did not resolve to anything, but target has since
+     * been created at our path in our parent.
+     */
+    ResolvedPath withTarget(INode target) {
+        if(hasTarget() || resolvedToSymbolicLink() || !hasValidParent) {
+            throw new IllegalStateException();
+        }
+        return new ResolvedPath(fs, steps, lookups, target, null, true);
+    }
+    
+    /**
+     * Did other resolve to the same parent, and the same file,
+     * directory or symbolic link in that parent as we did.
+     */
+    boolean isSameAs(ResolvedPath other) {
+        if(hasValidParent != other.hasValidParent) {
+            return false;
+        }
+        if(hasValidParent && getParent() != other.getParent()) {
+            return false;
+        }
+        return target == other.target && 
+               symlinkDirectoryEntry == other.symlinkDirectoryEntry;
+    }
+    
     //for testing
     List<String> getSteps() {
         return new AbstractList<String>() {
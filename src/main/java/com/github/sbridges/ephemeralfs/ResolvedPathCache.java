@@ -0,0 +1,86 @@
+/*
+ * Copyright 2015 Sean Bridges. All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ * 
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ * 
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * 
+ * 
+ */
+
+package com.github.sbridges.ephemeralfs;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A bounded cache from absolute paths to their resolution.<P>
+ * 
+ * Entries are not removed when the file system changes.  Instead each
+ * entry remembers the directories it looked up children in, and is only
+ * used while none of those directories have had an entry removed.  Only 
+ * paths that resolved are cached, adding a directory entry can never 
+ * change where an existing path resolves to.<P>
+ * 
+ * Keys are the path exactly as given, so a case insensitive file
+ * system caches each spelling of a path separately.
+ */
+class ResolvedPathCache {
+
+    //when we grow past this, start over
+    static final int MAX_SIZE = 4096;
+    
+    private final ConcurrentMap<String, ResolvedPath> followLinks = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ResolvedPath> noFollowLinks = new ConcurrentHashMap<>();
+    
+    /**
+     * @return the cached resolution, or null if there is no valid
+     * cached resolution
+     */
+    public ResolvedPath get(String absolutePath, boolean noFollowLastSymlink) {
+        ConcurrentMap<String, ResolvedPath> cache = cache(noFollowLastSymlink);
+        ResolvedPath answer = cache.get(absolutePath);
+        if(answer == null) {
+            return null;
+        }
+        if(!answer.isStillValid()) {
+            cache.remove(absolutePath, answer);
+            return null;
+        }
+        return answer;
+    }
+    
+    public void put(String absolutePath, boolean noFollowLastSymlink, ResolvedPath resolved) {
+        if(!resolved.didResolve()) {
+            return;
+        }
+        ConcurrentMap<String, ResolvedPath> cache = cache(noFollowLastSymlink);
+        if(cache.size() >= MAX_SIZE) {
+            cache.clear();
+        }
+        cache.put(absolutePath, resolved);
+    }
+    
+    private ConcurrentMap<String, ResolvedPath> cache(boolean noFollowLastSymlink) {
+        return noFollowLastSymlink ? noFollowLinks : followLinks;
+    }
+}
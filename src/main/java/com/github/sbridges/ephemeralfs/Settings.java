@@ -45,6 +45,8 @@ class Settings {
     private final long totalSpace;
     private final long maxPathLength;
     private final boolean recordStackTracesOnOpen;
+    private final boolean storeContentsOffHeap;
+    private final boolean completeAsyncOperationsInline;
     
     public Settings(Map<String, ?> props) {
         Map<String, Object> propsCopy = new HashMap<String, Object>(props);
@@ -65,6 +67,8 @@ class Settings {
         totalSpace = getOptionalLong(propsCopy, EphemeralFsFileSystemBuilder.TOTAL_SPACE, Long.MAX_VALUE);
         maxPathLength = getOptionalLong(propsCopy, EphemeralFsFileSystemBuilder.MAX_PATH_LENGTH, Long.MAX_VALUE);
         recordStackTracesOnOpen = Boolean.valueOf(getProp(propsCopy, EphemeralFsFileSystemBuilder.RECORD_RESOURCE_CREATION_STACK_TRACES));
+        storeContentsOffHeap = getOptionalBoolean(propsCopy, EphemeralFsFileSystemBuilder.STORE_CONTENTS_OFF_HEAP, false);
+        completeAsyncOperationsInline = getOptionalBoolean(propsCopy, EphemeralFsFileSystemBuilder.COMPLETE_ASYNC_OPERATIONS_INLINE, false);
         
         if(!propsCopy.isEmpty()) {
             throw new IllegalArgumentException("unrecognized props:" + propsCopy.keySet());
@@ -94,6 +98,17 @@ class Settings {
         return answer;
     }
 
+    private boolean getOptionalBoolean(Map<String, ?> propsCopy, String propertyName, boolean defaultValue) {
+        Object val = propsCopy.remove(propertyName);
+        if(val == null) {
+            return defaultValue;
+        }
+        if(!(val instanceof String)) {
+            throw new IllegalStateException("invalid prop:" + propertyName + " val:" + val);
+        }
+        return Boolean.parseBoolean(val.toString());
+    }
+
     private String getProp(Map<String, Object> propsCopy, String propertyName) {
         Object val = propsCopy.remove(propertyName);
         if(val == null || !(val instanceof String)) {
@@ -149,4 +164,12 @@ class Settings {
         return recordStackTracesOnOpen;
     }
 
+    public boolean storeContentsOffHeap() {
+        return storeContentsOffHeap;
+    }
+    
+    public boolean completeAsyncOperationsInline() {
+        return completeAsyncOperationsInline;
+    }
+
 }
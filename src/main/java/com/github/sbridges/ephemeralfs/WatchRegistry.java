@@ -58,13 +58,17 @@ class WatchRegistry {
                 watches.put(directory, new CopyOnWriteArrayList<EphemeralFsWatchKey>());
                 watches.get(directory).add(watchKey);
             }
+            directory.addWatch();
         }
     }
     
     public void deregister(INode directory, EphemeralFsWatchKey watchKey) {
         synchronized(lock) {
             CopyOnWriteArrayList<EphemeralFsWatchKey> existing = watches.get(directory);
-            existing.remove(watchKey);
+            if(existing == null || !existing.remove(watchKey)) {
+                return;
+            }
+            directory.removeWatch();
             if(existing.isEmpty()) {
                 watches.remove(directory);
             }
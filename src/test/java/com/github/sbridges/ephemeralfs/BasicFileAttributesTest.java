@@ -35,17 +35,26 @@ import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
 
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributeView;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileTime;
 import java.nio.file.attribute.PosixFilePermission;
 import java.nio.file.attribute.PosixFilePermissions;
 import java.util.EnumSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -107,6 +116,53 @@ public class BasicFileAttributesTest {
         
         assertTrue(Files.getLastModifiedTime(path).toMillis() >= now);
     }
+    
+    @Test
+    public void testSetLastModifiedTimeThroughWriteWithoutFsLock() throws Exception {
+        //we need to hold the file system lock
+        assumeTrue(root.getFileSystem() instanceof EphemeralFsFileSystem);
+        
+        long now = roundToSeconds(System.currentTimeMillis());
+        Path path = root.resolve("test");
+        Files.createFile(path);
+        Files.setLastModifiedTime(path, FileTime.fromMillis(now - 10000));
+        
+        final FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE);
+        final EphemeralFsFileSystem fs = (EphemeralFsFileSystem) root.getFileSystem();
+        final CountDownLatch locked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            //hold the file system lock on another thread, 
+            //the write should still complete
+            executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    fs.fsLock.writeLock().lock();
+                    try {
+                        locked.countDown();
+                        release.await();
+                    } finally {
+                        fs.fsLock.writeLock().unlock();
+                    }
+                    return null;
+                }
+            });
+            assertTrue(locked.await(10, TimeUnit.SECONDS));
+            assertEquals(Integer.valueOf(1), executor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    return channel.write(ByteBuffer.wrap(new byte[] {5}));
+                }
+            }).get(10, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            executor.shutdown();
+            channel.close();
+        }
+        
+        assertTrue(Files.getLastModifiedTime(path).toMillis() >= now);
+    }
 
     @Test
     public void testSetLastAccessNonExistent() throws Exception {
@@ -30,7 +30,10 @@
 package com.github.sbridges.ephemeralfs;
 
 import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
 
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.DirectoryNotEmptyException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.FileAlreadyExistsException;
@@ -40,7 +43,13 @@ import java.nio.file.LinkOption;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -90,6 +99,35 @@ public class CopyTest {
         assertArrayEquals(contents, Files.readAllBytes(dest));
     }
     
+    @Test
+    public void testWriteInPlaceAfterCopy() throws Exception {
+        byte[] contents = new byte[3 * 4096 + 18];
+        random.nextBytes(contents);
+        
+        Path source = root.resolve("source");
+        Path dest = root.resolve("dest");
+        Files.write(source, contents);
+        
+        Files.copy(source, dest);
+        
+        try(FileChannel channel = FileChannel.open(dest, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {1, 2, 3}), 4096);
+        }
+        assertArrayEquals(contents, Files.readAllBytes(source));
+        
+        byte[] expectedDest = contents.clone();
+        expectedDest[4096] = 1;
+        expectedDest[4097] = 2;
+        expectedDest[4098] = 3;
+        assertArrayEquals(expectedDest, Files.readAllBytes(dest));
+        
+        try(FileChannel channel = FileChannel.open(source, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {4}), 0);
+        }
+        assertArrayEquals(expectedDest, Files.readAllBytes(dest));
+        assertEquals(4, Files.readAllBytes(source)[0]);
+    }
+    
     @Test
     public void testCopyFileFailsIfTargetParentDoesNotExist() throws Exception {
         byte[] contents = new byte[20];
@@ -402,6 +440,25 @@ public class CopyTest {
         assertArrayEquals(contents, Files.readAllBytes(dest));
     }
     
+    @IgnoreIfNoSymlink
+    @Test
+    public void testCopyReplacesSymlinkNotItsTarget() throws Exception {
+        Path dir = Files.createDirectory(root.resolve("dir"));
+        Path realFile = root.resolve("realFile");
+        Path symlink = dir.resolve("symlink");
+        Path source = root.resolve("source");
+        
+        Files.write(realFile, new byte[] {1});
+        Files.write(source, new byte[] {2});
+        Files.createSymbolicLink(symlink, realFile);
+        
+        Files.copy(source, symlink, StandardCopyOption.REPLACE_EXISTING);
+        
+        assertFalse(Files.isSymbolicLink(symlink));
+        assertArrayEquals(new byte[] {2}, Files.readAllBytes(symlink));
+        assertArrayEquals(new byte[] {1}, Files.readAllBytes(realFile));
+    }
+    
     @IgnoreIfNoSymlink
     @Test
     public void testCopySymlink() throws Exception {
@@ -496,4 +553,37 @@ public class CopyTest {
         assertTrue(Files.exists(source));
     }
     
+    @Test
+    public void testCopyReplaceExistingTargetNeverMissing() throws Exception {
+        //the jdk deletes then copies for REPLACE_EXISTING
+        assumeTrue(root instanceof EphemeralFsPath);
+        
+        final Path source = Files.write(root.resolve("source"), new byte[] {1, 2, 3});
+        final Path target = Files.createFile(root.resolve("target"));
+        final AtomicBoolean done = new AtomicBoolean();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Integer> missing = executor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    int answer = 0;
+                    while(!done.get()) {
+                        if(!Files.exists(target)) {
+                            answer++;
+                        }
+                    }
+                    return answer;
+                }
+            });
+            for(int i = 0; i < 2000; i++) {
+                Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            done.set(true);
+            assertEquals(Integer.valueOf(0), missing.get());
+        } finally {
+            done.set(true);
+            executor.shutdown();
+        }
+        assertArrayEquals(new byte[] {1, 2, 3}, Files.readAllBytes(target));
+    }
 }
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2015 Sean Bridges. All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ * 
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ * 
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * 
+ * 
+ */
+
+package com.github.sbridges.ephemeralfs;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DefaultAsyncThreadPoolHolderTest {
+
+    DefaultAsyncThreadPoolHolder holder;
+    
+    @Before
+    public void setUp() {
+        holder = new DefaultAsyncThreadPoolHolder();
+    }
+    
+    @After
+    public void tearDown() {
+        holder.close();
+    }
+    
+    @Test
+    public void testRunsTasks() throws Exception {
+        ExecutorService executor = holder.getThreadPool();
+        assertEquals("done", executor.submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return "done";
+            }
+        }).get(10, TimeUnit.SECONDS));
+    }
+    
+    @Test
+    public void testTasksDoNotRunOnCallingThread() throws Exception {
+        final Thread caller = Thread.currentThread();
+        assertFalse(holder.getThreadPool().submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return Thread.currentThread() == caller;
+            }
+        }).get(10, TimeUnit.SECONDS));
+    }
+    
+    @Test
+    public void testSamePoolReturned() throws Exception {
+        assertSame(holder.getThreadPool(), holder.getThreadPool());
+    }
+    
+    @Test
+    public void testCloseShutsDownPool() throws Exception {
+        ExecutorService executor = holder.getThreadPool();
+        holder.close();
+        assertTrue(executor.isShutdown());
+        try {
+            holder.getThreadPool();
+            fail();
+        } catch(IllegalStateException e) {
+            //pass
+        }
+    }
+}
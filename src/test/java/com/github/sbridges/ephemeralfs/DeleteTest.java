@@ -30,12 +30,18 @@
 package com.github.sbridges.ephemeralfs;
 
 import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
 
 import java.nio.file.DirectoryNotEmptyException;
 import java.nio.file.FileSystemException;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -162,4 +168,79 @@ public class DeleteTest {
         }
     }
     
+    @Test
+    public void testDeleteDirectoryRacingCreateInIt() throws Exception {
+        final Path dir = root.resolve("dir");
+        final Path file = dir.resolve("file");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            for(int i = 0; i < 500; i++) {
+                Files.createDirectory(dir);
+                Future<Boolean> created = executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        try {
+                            Files.createFile(file);
+                            return true;
+                        } catch(NoSuchFileException e) {
+                            return false;
+                        }
+                    }
+                });
+                boolean deleted;
+                try {
+                    Files.delete(dir);
+                    deleted = true;
+                } catch(DirectoryNotEmptyException e) {
+                    deleted = false;
+                }
+                //exactly one of them wins, the file is never 
+                //created in a deleted directory
+                if(created.get()) {
+                    assertFalse(deleted);
+                    assertTrue(Files.exists(file));
+                    Files.delete(file);
+                    Files.delete(dir);
+                } else {
+                    assertTrue(deleted);
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+    
+    @Test
+    public void testCreateAndDeleteWhileOtherDirectoryLocked() throws Exception {
+        //we need to lock a directory
+        assumeTrue(root instanceof EphemeralFsPath);
+        
+        final Path locked = root.resolve("locked");
+        final Path other = root.resolve("other");
+        Files.createDirectory(locked);
+        Files.createDirectory(other);
+        final INode lockedINode = ResolvedPath.resolve((EphemeralFsPath) locked).getTarget();
+        
+        lockedINode.lockDirectory();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            //changes in other directories don't wait for locked
+            executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    Path file = other.resolve("file");
+                    Files.createFile(file);
+                    Files.createDirectory(other.resolve("dir"));
+                    Files.delete(file);
+                    Files.delete(other.resolve("dir"));
+                    return null;
+                }
+            }).get(10, TimeUnit.SECONDS);
+        } finally {
+            lockedINode.unlockDirectory();
+            executor.shutdown();
+        }
+        assertFalse(Files.exists(other.resolve("file")));
+        assertFalse(Files.exists(other.resolve("dir")));
+    }
 }
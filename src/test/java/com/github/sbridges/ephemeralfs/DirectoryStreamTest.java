@@ -32,13 +32,17 @@ package com.github.sbridges.ephemeralfs;
 import static com.github.sbridges.ephemeralfs.TestUtil.assertFound;
 import static org.junit.Assert.*;
 
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.NotDirectoryException;
 import java.nio.file.Path;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.Set;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -238,6 +242,49 @@ public class DirectoryStreamTest {
     }
     
     
+    @Test
+    public void testFilterExceptionThrownWhileIterating() throws Exception {
+        Path dir = root.resolve("dir");
+        Files.createDirectories(dir.resolve("child"));
+        
+        final IOException thrown = new IOException("test");
+        DirectoryStream.Filter<Path> filter = new DirectoryStream.Filter<Path>() {
+            @Override
+            public boolean accept(Path entry) throws IOException {
+                throw thrown;
+            }
+        };
+        try(DirectoryStream<Path> ds = Files.newDirectoryStream(dir, filter)) {
+            Iterator<Path> iterator = ds.iterator();
+            try {
+                iterator.hasNext();
+                fail();
+            } catch(DirectoryIteratorException e) {
+                assertSame(thrown, e.getCause());
+            }
+        }
+    }
+    
+    @Test
+    public void testDeleteWhileIterating() throws Exception {
+        Path dir = root.resolve("dir");
+        Files.createDirectories(dir);
+        Set<Path> children = new HashSet<>();
+        for(int i = 0; i < 100; i++) {
+            children.add(Files.createFile(dir.resolve("child" + i)));
+        }
+        
+        Set<Path> seen = new HashSet<>();
+        try(DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+            for(Path child : ds) {
+                assertTrue(children.contains(child));
+                assertTrue(seen.add(child));
+                Files.delete(child);
+            }
+        }
+        assertEquals(children, seen);
+    }
+    
     @Test
     public void testCanDeleteDirWithOpenDirStraem() throws Exception {
        
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2015 Sean Bridges. All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ * 
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ * 
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * 
+ * 
+ */
+
+package com.github.sbridges.ephemeralfs;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class EphemeralFsIoBatchTest {
+
+    FileSystem fs;
+    Path a;
+    Path b;
+    AsynchronousFileChannel aChannel;
+    AsynchronousFileChannel bChannel;
+    
+    @Before
+    public void setUp() throws Exception {
+        fs = EphemeralFsFileSystemBuilder.unixFs().build();
+        a = fs.getPath("/a");
+        b = fs.getPath("/b");
+        aChannel = AsynchronousFileChannel.open(a, 
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE, StandardOpenOption.READ);
+        bChannel = AsynchronousFileChannel.open(b, 
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE, StandardOpenOption.READ);
+    }
+    
+    @After
+    public void tearDown() throws Exception {
+        aChannel.close();
+        bChannel.close();
+        fs.close();
+    }
+    
+    @Test
+    public void testWritesToManyFiles() throws Exception {
+        List<EphemeralFsIoBatch.Result> results = new EphemeralFsIoBatch()
+            .write(aChannel, ByteBuffer.wrap(new byte[] {1, 2}), 0)
+            .write(aChannel, ByteBuffer.wrap(new byte[] {3}), 2)
+            .write(bChannel, ByteBuffer.wrap(new byte[] {4}), 0)
+            .write(aChannel, ByteBuffer.wrap(new byte[] {5}), 3)
+            .submit()
+            .get();
+        
+        assertEquals(4, results.size());
+        assertEquals(2, results.get(0).getBytes());
+        assertEquals(1, results.get(1).getBytes());
+        assertEquals(1, results.get(2).getBytes());
+        assertEquals(1, results.get(3).getBytes());
+        assertArrayEquals(new byte[] {1, 2, 3, 5}, Files.readAllBytes(a));
+        assertArrayEquals(new byte[] {4}, Files.readAllBytes(b));
+    }
+    
+    @Test
+    public void testReadsSeeEarlierWrites() throws Exception {
+        ByteBuffer read = ByteBuffer.allocate(3);
+        ByteBuffer pastEnd = ByteBuffer.allocate(3);
+        List<EphemeralFsIoBatch.Result> results = new EphemeralFsIoBatch()
+            .write(aChannel, ByteBuffer.wrap(new byte[] {1, 2, 3}), 0)
+            .read(aChannel, read, 0)
+            .read(aChannel, pastEnd, 3)
+            .submit()
+            .get();
+        assertEquals(3, results.get(1).getBytes());
+        assertArrayEquals(new byte[] {1, 2, 3}, read.array());
+        assertEquals(-1, results.get(2).getBytes());
+    }
+    
+    @Test
+    public void testFailedOperationDoesNotFailBatch() throws Exception {
+        bChannel.close();
+        AsynchronousFileChannel readOnly = AsynchronousFileChannel.open(a, StandardOpenOption.READ);
+        try {
+            List<EphemeralFsIoBatch.Result> results = new EphemeralFsIoBatch()
+                .write(bChannel, ByteBuffer.wrap(new byte[] {1}), 0)
+                .write(readOnly, ByteBuffer.wrap(new byte[] {1}), 0)
+                .write(aChannel, ByteBuffer.wrap(new byte[] {2}), 0)
+                .submit()
+                .get();
+            
+            assertFalse(results.get(0).isSuccess());
+            assertTrue(results.get(0).getError() instanceof ClosedChannelException);
+            assertTrue(results.get(1).getError() instanceof NonWritableChannelException);
+            try {
+                results.get(1).getBytes();
+                fail();
+            } catch(IllegalStateException e) {
+                //pass
+            }
+            assertTrue(results.get(2).isSuccess());
+            assertArrayEquals(new byte[] {2}, Files.readAllBytes(a));
+        } finally {
+            readOnly.close();
+        }
+    }
+    
+    @Test
+    public void testCompletionHandler() throws Exception {
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicReference<List<EphemeralFsIoBatch.Result>> results = new AtomicReference<>();
+        new EphemeralFsIoBatch()
+            .write(aChannel, ByteBuffer.wrap(new byte[] {1}), 0)
+            .write(bChannel, ByteBuffer.wrap(new byte[] {2, 3}), 0)
+            .submit(null, new CompletionHandler<List<EphemeralFsIoBatch.Result>, Void>() {
+                @Override
+                public void completed(List<EphemeralFsIoBatch.Result> result, Void attachment) {
+                    results.set(result);
+                    done.countDown();
+                }
+
+                @Override
+                public void failed(Throwable exc, Void attachment) {
+                    done.countDown();
+                }
+            });
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(1, results.get().get(0).getBytes());
+        assertEquals(2, results.get().get(1).getBytes());
+    }
+    
+    @Test
+    public void testEmptyBatch() throws Exception {
+        assertTrue(new EphemeralFsIoBatch().submit().get().isEmpty());
+    }
+    
+    @Test(expected = IllegalStateException.class)
+    public void testSubmitTwice() throws Exception {
+        EphemeralFsIoBatch batch = new EphemeralFsIoBatch()
+            .write(aChannel, ByteBuffer.wrap(new byte[] {1}), 0);
+        batch.submit();
+        batch.submit();
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativePosition() throws Exception {
+        new EphemeralFsIoBatch().read(aChannel, ByteBuffer.allocate(1), -1);
+    }
+}
@@ -32,18 +32,29 @@ package com.github.sbridges.ephemeralfs;
 import static java.nio.file.StandardOpenOption.READ;
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.FileChannel;
+import java.nio.channels.NonReadableChannelException;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -360,6 +371,52 @@ public class FileChannelTest {
         }
     }
     
+    @Test
+    public void testTransferToArbitraryChannelMultipleBlocks() throws Exception {
+        byte[] contents = new byte[50000];
+        new Random().nextBytes(contents);
+        
+        Path source = root.resolve("source");
+        Files.write(source, contents);
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        try(FileChannel sourceChannel = FileChannel.open(source, StandardOpenOption.READ)) {
+            assertEquals(contents.length - 10, sourceChannel.transferTo(10, Long.MAX_VALUE, Channels.newChannel(sink)));
+            assertEquals(0, sourceChannel.position());
+        }
+        assertArrayEquals(Arrays.copyOfRange(contents, 10, contents.length), sink.toByteArray());
+    }
+    
+    @Test
+    public void testTransferFromArbitraryChannelLargeCount() throws Exception {
+        byte[] contents = new byte[100000];
+        new Random().nextBytes(contents);
+        
+        Path dest = root.resolve("dest");
+        try(FileChannel destChannel = FileChannel.open(dest, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            ReadableByteChannel src = Channels.newChannel(new ByteArrayInputStream(contents));
+            assertEquals(contents.length, destChannel.transferFrom(src, 0, Long.MAX_VALUE));
+            assertEquals(0, destChannel.position());
+        }
+        assertArrayEquals(contents, Files.readAllBytes(dest));
+    }
+    
+    @Test
+    public void testTransferFromMultipleBlocks() throws Exception {
+        byte[] contents = new byte[50000];
+        new Random().nextBytes(contents);
+        
+        Path source = root.resolve("source");
+        Path dest = root.resolve("dest");
+        Files.write(source, contents);
+        try(FileChannel sourceChannel = FileChannel.open(source, StandardOpenOption.READ);
+            FileChannel destChannel = FileChannel.open(dest, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            sourceChannel.position(100);
+            assertEquals(30000, destChannel.transferFrom(sourceChannel, 0, 30000));
+            assertEquals(30100, sourceChannel.position());
+        }
+        assertArrayEquals(Arrays.copyOfRange(contents, 100, 30100), Files.readAllBytes(dest));
+    }
+    
     @IgnoreIf(FsType.MAC)
     @Test
     public void testTransferFromSelf() throws Exception {
@@ -400,6 +457,53 @@ public class FileChannelTest {
         }
     }
     
+    @Test
+    public void testTransferToWriteOnlyPastEnd() throws Exception {
+        Path source = root.resolve("source");
+        Files.write(source, new byte[] {1, 2, 3});
+        try(FileChannel sourceChannel = FileChannel.open(source, StandardOpenOption.WRITE)) {
+            sourceChannel.transferTo(10, 5, Channels.newChannel(new ByteArrayOutputStream()));
+            fail();
+        } catch(NonReadableChannelException e) {
+            //pass
+        }
+    }
+    
+    @IgnoreIf(FsType.MAC)
+    @Test
+    public void testTransferToAppendSameFile() throws Exception {
+        byte[] contents = new byte[5000];
+        new Random().nextBytes(contents);
+        
+        Path source = root.resolve("source");
+        Files.write(source, contents);
+        try(FileChannel sourceChannel = FileChannel.open(source, StandardOpenOption.READ);
+            FileChannel appendChannel = FileChannel.open(source, StandardOpenOption.APPEND)) {
+            assertEquals(contents.length, sourceChannel.transferTo(0, Long.MAX_VALUE, appendChannel));
+        }
+        byte[] expected = new byte[contents.length * 2];
+        System.arraycopy(contents, 0, expected, 0, contents.length);
+        System.arraycopy(contents, 0, expected, contents.length, contents.length);
+        assertArrayEquals(expected, Files.readAllBytes(source));
+    }
+    
+    @IgnoreIf(FsType.MAC)
+    @Test
+    public void testTransferFromSameFileAppend() throws Exception {
+        byte[] contents = new byte[5000];
+        new Random().nextBytes(contents);
+        
+        Path source = root.resolve("source");
+        Files.write(source, contents);
+        try(FileChannel sourceChannel = FileChannel.open(source, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            assertEquals(contents.length, sourceChannel.transferFrom(sourceChannel, contents.length, Long.MAX_VALUE));
+        }
+        byte[] expected = new byte[contents.length * 2];
+        System.arraycopy(contents, 0, expected, 0, contents.length);
+        System.arraycopy(contents, 0, expected, contents.length, contents.length);
+        assertArrayEquals(expected, Files.readAllBytes(source));
+    }
+    
     @Test
     public void testOpenCreateNewExistingNoWrite() throws Exception {
         Path test = root.resolve("test");
@@ -632,4 +736,106 @@ public class FileChannelTest {
         assertArrayEquals(new byte[] { 'd' }, d);
     }
     
+    @Test
+    public void testGatheringWrites() throws Exception {
+        Path path = root.resolve("file");
+        byte[] header = new byte[] {1, 2, 3, 4};
+        byte[] payload = new byte[10000];
+        new Random(42).nextBytes(payload);
+
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {9}));
+            ByteBuffer[] buffers = new ByteBuffer[] { 
+                    ByteBuffer.wrap(header),
+                    ByteBuffer.allocate(0),
+                    ByteBuffer.wrap(payload) };
+            long written = channel.write(buffers, 0, 3);
+            assertEquals("bytes written", 10004L, written);
+            assertEquals(10005L, channel.position());
+            assertEquals(10005L, channel.size());
+        }
+
+        byte[] expected = new byte[10005];
+        expected[0] = 9;
+        System.arraycopy(header, 0, expected, 1, 4);
+        System.arraycopy(payload, 0, expected, 5, payload.length);
+        assertArrayEquals(expected, Files.readAllBytes(path));
+    }
+    
+    @Test
+    public void testScatteringReadsAtEndOfFile() throws Exception {
+        Path path = root.resolve("file");
+        Files.write(path, "ab".getBytes());
+
+        try(FileChannel channel = FileChannel.open(path, READ)) {
+            ByteBuffer first = ByteBuffer.allocate(1);
+            ByteBuffer second = ByteBuffer.allocate(5);
+            assertEquals(2L, channel.read(new ByteBuffer[] {first, second}));
+            assertEquals(1, second.position());
+            assertEquals(-1L, channel.read(new ByteBuffer[] {ByteBuffer.allocate(1)}));
+        }
+    }
+    
+    @Test
+    public void testConcurrentAppendsFromSeparateChannels() throws Exception {
+        final Path path = root.resolve("log");
+        Files.createFile(path);
+        final int threads = 4;
+        final int records = 200;
+        final int recordSize = 100;
+        
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Void>> results = new ArrayList<>();
+            for(int i = 0; i < threads; i++) {
+                final byte value = (byte) (i + 1);
+                results.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        byte[] record = new byte[recordSize];
+                        Arrays.fill(record, value);
+                        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.APPEND)) {
+                            for(int j = 0; j < records; j++) {
+                                assertEquals(recordSize, channel.write(ByteBuffer.wrap(record)));
+                            }
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for(Future<Void> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        
+        byte[] contents = Files.readAllBytes(path);
+        assertEquals(threads * records * recordSize, contents.length);
+        int[] counts = new int[threads + 1];
+        for(int i = 0; i < contents.length; i += recordSize) {
+            for(int j = i; j < i + recordSize; j++) {
+                assertEquals(contents[i], contents[j]);
+            }
+            counts[contents[i]]++;
+        }
+        for(int i = 1; i <= threads; i++) {
+            assertEquals(records, counts[i]);
+        }
+    }
+    
+    @Test
+    public void testAppendIgnoresPosition() throws Exception {
+        Path path = root.resolve("file");
+        Files.write(path, new byte[] {1, 2, 3});
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.APPEND)) {
+            Files.write(path, new byte[] {4}, StandardOpenOption.APPEND);
+            assertEquals(4, channel.position());
+            channel.position(0);
+            channel.write(ByteBuffer.wrap(new byte[] {5}));
+            assertEquals(5, channel.position());
+        }
+        assertArrayEquals(new byte[] {1, 2, 3, 4, 5}, Files.readAllBytes(path));
+    }
+    
 }
@@ -38,8 +38,16 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.channels.SeekableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.After;
 import org.junit.Before;
@@ -144,6 +152,179 @@ public class FileContentsTest {
         assertEquals(101, fixture.getSize());
     }
     
+    @Test
+    public void testReadWriteSpanningBlocks() throws Exception {
+        SeekableByteChannel channel = fixture.newChannel(true, true, false, false, false, false, resolvedPath, fs);
+        byte[] contents = new byte[FileContents.BLOCK_SIZE * 3 + 17];
+        random.nextBytes(contents);
+        channel.position(FileContents.BLOCK_SIZE - 5);
+        channel.write(ByteBuffer.wrap(contents));
+        assertEquals(FileContents.BLOCK_SIZE - 5 + contents.length, fixture.getSize());
+        
+        ByteBuffer read = ByteBuffer.allocate(contents.length);
+        channel.position(FileContents.BLOCK_SIZE - 5);
+        while(read.hasRemaining()) {
+            channel.read(read);
+        }
+        assertArrayEquals(contents, read.array());
+    }
+    
+    @Test
+    public void testTruncateThenExtendReadsZeros() throws Exception {
+        SeekableByteChannel channel = fixture.newChannel(true, true, false, false, false, false, resolvedPath, fs);
+        byte[] ones = new byte[500];
+        Arrays.fill(ones, (byte) 1);
+        channel.write(ByteBuffer.wrap(ones));
+        channel.truncate(100);
+        channel.position(400);
+        channel.write(ByteBuffer.wrap(new byte[] {1}));
+        
+        ByteBuffer read = ByteBuffer.allocate(401);
+        channel.position(0);
+        channel.read(read);
+        for(int i = 100; i < 400; i++) {
+            assertEquals(0, read.get(i));
+        }
+        assertEquals(1, read.get(400));
+    }
+    
+    @Test
+    public void testHolesReadAsZeros() throws Exception {
+        SeekableByteChannel channel = fixture.newChannel(true, true, false, false, false, false, resolvedPath, fs);
+        channel.position(FileContents.BLOCK_SIZE * 5 + 3);
+        channel.write(ByteBuffer.wrap(new byte[] {1}));
+        assertEquals(FileContents.BLOCK_SIZE * 5 + 4, fixture.getSize());
+        
+        ByteBuffer read = ByteBuffer.allocate(FileContents.BLOCK_SIZE * 5 + 4);
+        random.nextBytes(read.array());
+        channel.position(0);
+        while(read.hasRemaining()) {
+            channel.read(read);
+        }
+        for(int i = 0; i < read.capacity() - 1; i++) {
+            assertEquals(0, read.get(i));
+        }
+        assertEquals(1, read.get(read.capacity() - 1));
+    }
+    
+    @Test
+    public void testWriteBeyond2Gb() throws Exception {
+        SeekableByteChannel channel = fixture.newChannel(true, true, false, false, false, false, resolvedPath, fs);
+        long position = 3L * Integer.MAX_VALUE;
+        channel.position(position);
+        channel.write(ByteBuffer.wrap(new byte[] {1, 2, 3}));
+        assertEquals(position + 3, fixture.getSize());
+        assertEquals(position + 3, channel.position());
+        
+        ByteBuffer read = ByteBuffer.allocate(4);
+        channel.position(position - 1);
+        assertEquals(4, channel.read(read));
+        assertArrayEquals(new byte[] {0, 1, 2, 3}, read.array());
+        
+        channel.truncate(position + 1);
+        assertEquals(position + 1, fixture.getSize());
+        assertEquals(position + 1, channel.position());
+    }
+    
+    @Test
+    public void testGrowSmallFile() throws Exception {
+        SeekableByteChannel channel = fixture.newChannel(true, true, false, false, false, false, resolvedPath, fs);
+        byte[] ones = new byte[40];
+        Arrays.fill(ones, (byte) 1);
+        channel.write(ByteBuffer.wrap(ones));
+        channel.truncate(10);
+        channel.position(50);
+        channel.write(ByteBuffer.wrap(new byte[] {2}));
+        channel.position(FileContents.INLINE_SIZE - 1);
+        channel.write(ByteBuffer.wrap(new byte[] {3, 3}));
+        
+        byte[] expected = new byte[FileContents.INLINE_SIZE + 1];
+        Arrays.fill(expected, 0, 10, (byte) 1);
+        expected[50] = 2;
+        expected[FileContents.INLINE_SIZE - 1] = 3;
+        expected[FileContents.INLINE_SIZE] = 3;
+        
+        ByteBuffer read = ByteBuffer.allocate(expected.length);
+        channel.position(0);
+        assertEquals(expected.length, channel.read(read));
+        assertArrayEquals(expected, read.array());
+    }
+    
+    @Test
+    public void testEmptyWritePastInlineSize() throws Exception {
+        FileChannel channel = fixture.newChannel(true, true, false, false, false, false, resolvedPath, fs);
+        channel.write(ByteBuffer.wrap(new byte[] {1, 2, 3}));
+        channel.write(ByteBuffer.allocate(0), 100);
+        
+        byte[] expected = new byte[100];
+        expected[0] = 1;
+        expected[1] = 2;
+        expected[2] = 3;
+        
+        ByteBuffer read = ByteBuffer.allocate(expected.length);
+        assertEquals(expected.length, channel.read(read, 0));
+        assertArrayEquals(expected, read.array());
+    }
+    
+    @Test
+    public void testConcurrentPositionalReads() throws Exception {
+        final FileChannel channel = fixture.newChannel(true, true, false, false, false, false, resolvedPath, fs);
+        final byte[] contents = new byte[FileContents.BLOCK_SIZE * 4];
+        random.nextBytes(contents);
+        channel.write(ByteBuffer.wrap(contents));
+        
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Void>> results = new ArrayList<>();
+            for(int i = 0; i < 4; i++) {
+                final int seed = i;
+                results.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        Random threadRandom = new Random(seed);
+                        for(int j = 0; j < 500; j++) {
+                            int position = threadRandom.nextInt(contents.length);
+                            ByteBuffer read = ByteBuffer.allocate(Math.min(100, contents.length - position));
+                            assertEquals(read.capacity(), channel.read(read, position));
+                            assertArrayEquals(
+                                    Arrays.copyOfRange(contents, position, position + read.capacity()), 
+                                    read.array());
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for(Future<Void> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        //positional reads do not change the position
+        assertEquals(contents.length, channel.position());
+    }
+    
+    @Test
+    public void testViewUnchangedByLaterWrite() throws Exception {
+        SeekableByteChannel channel = fixture.newChannel(true, true, false, false, false, false, resolvedPath, fs);
+        byte[] ones = new byte[FileContents.BLOCK_SIZE];
+        Arrays.fill(ones, (byte) 1);
+        channel.write(ByteBuffer.wrap(ones));
+        
+        FileContents.View view = fixture.view(10, 20);
+        assertEquals(20, view.getBuffer().remaining());
+        assertTrue(view.getBuffer().isReadOnly());
+        channel.position(0);
+        channel.write(ByteBuffer.wrap(new byte[100]));
+        
+        while(view.getBuffer().hasRemaining()) {
+            assertEquals(1, view.getBuffer().get());
+        }
+        fixture.release(view);
+        
+        assertNull(fixture.view(FileContents.BLOCK_SIZE, 1));
+    }
+    
     private InputStream is() {
         return Channels.newInputStream(fixture.newChannel(true, true, false, false, false, false, resolvedPath, fs));
     }
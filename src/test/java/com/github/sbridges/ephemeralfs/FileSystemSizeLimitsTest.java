@@ -34,7 +34,10 @@ import static org.junit.Assert.*;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 
 import org.junit.Test;
 
@@ -166,6 +169,19 @@ public class FileSystemSizeLimitsTest {
     }
     
     
+    @Test
+    public void testHolesDoNotUseSpace() throws Exception {
+        long position = 100L * FileContents.BLOCK_SIZE + 10;
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {1}), position);
+        }
+        assertEquals(position + 1, Files.size(file));
+        assertUsed(11);
+        
+        Files.delete(file);
+        assertUsed(0);
+    }
+    
     private void assertUsed(int used) throws IOException {
         long free = fs.getFileStores().iterator().next().getUsableSpace();
         long actual = totalSize - free;
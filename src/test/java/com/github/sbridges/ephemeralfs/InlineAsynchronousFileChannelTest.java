@@ -0,0 +1,145 @@
+/*
+ * Copyright 2015 Sean Bridges. All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ * 
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ * 
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * 
+ * 
+ */
+
+package com.github.sbridges.ephemeralfs;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class InlineAsynchronousFileChannelTest {
+
+    FileSystem fs;
+    Path file;
+    AsynchronousFileChannel channel;
+    
+    @Before
+    public void setUp() throws Exception {
+        fs = EphemeralFsFileSystemBuilder.unixFs()
+                .setCompleteAsyncOperationsInline(true)
+                .build();
+        file = fs.getPath("/file");
+        channel = AsynchronousFileChannel.open(file, 
+                StandardOpenOption.CREATE_NEW, 
+                StandardOpenOption.WRITE, 
+                StandardOpenOption.READ);
+    }
+    
+    @After
+    public void tearDown() throws Exception {
+        channel.close();
+        fs.close();
+    }
+    
+    @Test
+    public void testFutureIsAlreadyComplete() throws Exception {
+        Future<Integer> write = channel.write(ByteBuffer.wrap(new byte[] {1, 2, 3}), 0);
+        assertTrue(write.isDone());
+        assertEquals((Integer) 3, write.get());
+        
+        ByteBuffer read = ByteBuffer.allocate(3);
+        Future<Integer> readFuture = channel.read(read, 0);
+        assertTrue(readFuture.isDone());
+        assertEquals((Integer) 3, readFuture.get());
+        assertArrayEquals(new byte[] {1, 2, 3}, read.array());
+    }
+    
+    @Test
+    public void testFutureFailure() throws Exception {
+        channel.close();
+        Future<Integer> write = channel.write(ByteBuffer.wrap(new byte[] {1}), 0);
+        assertTrue(write.isDone());
+        try {
+            write.get();
+            fail();
+        } catch(ExecutionException e) {
+            assertTrue(e.getCause() instanceof ClosedChannelException);
+        }
+    }
+    
+    @Test
+    public void testHandlerInvokedByCallingThread() throws Exception {
+        final AtomicReference<Thread> completedBy = new AtomicReference<>();
+        channel.write(ByteBuffer.wrap(new byte[] {1}), 0, null, new CompletionHandler<Integer, Void>() {
+            @Override
+            public void completed(Integer result, Void attachment) {
+                completedBy.set(Thread.currentThread());
+            }
+
+            @Override
+            public void failed(Throwable exc, Void attachment) {
+                //ignore
+            }
+        });
+        assertSame(Thread.currentThread(), completedBy.get());
+    }
+    
+    @Test
+    public void testChainedHandlersDoNotOverflowStack() throws Exception {
+        final int writes = 100000;
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        channel.write(ByteBuffer.wrap(new byte[] {1}), 0, 0, new CompletionHandler<Integer, Integer>() {
+            @Override
+            public void completed(Integer result, Integer attachment) {
+                int next = attachment + 1;
+                if(next == writes) {
+                    done.countDown();
+                } else {
+                    channel.write(ByteBuffer.wrap(new byte[] {1}), next, next, this);
+                }
+            }
+
+            @Override
+            public void failed(Throwable exc, Integer attachment) {
+                error.set(exc);
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        assertNull(error.get());
+        assertEquals(writes, Files.size(file));
+    }
+}
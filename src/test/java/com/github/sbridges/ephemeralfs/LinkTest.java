@@ -109,6 +109,23 @@ public class LinkTest {
         }
     }
     
+    @IgnoreIfNoSymlink
+    @Test
+    public void testCreateFileFailsIfDanglingSymLink() throws Exception {
+        Path source = root.resolve("source");
+        Path other = root.resolve("other");
+
+        Files.createSymbolicLink(other, source);
+        try {
+            Files.createFile(other);
+            fail();
+        } catch(FileAlreadyExistsException e) {
+            //pass
+        }
+        assertFalse(Files.exists(source));
+        assertTrue(Files.isSymbolicLink(other));
+    }
+    
     @IgnoreIfNoSymlink
     @Test
     public void testSymbolicLinkParentDoesNotExist() throws Exception {
@@ -30,15 +30,30 @@
 package com.github.sbridges.ephemeralfs;
 
 import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
 
 import java.nio.file.AccessDeniedException;
 import java.nio.file.DirectoryNotEmptyException;
 import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -240,6 +255,26 @@ public class MoveTest {
         checkExistence(source, target);
     }
    
+    @IgnoreIfNoSymlink
+    @Test
+    public void testMoveReplacesSymlinkNotItsTarget() throws Exception {
+        Path dir = Files.createDirectory(root.resolve("dir"));
+        Path realFile = root.resolve("realFile");
+        Path symlink = dir.resolve("symlink");
+        Path source = root.resolve("source");
+        
+        Files.write(realFile, new byte[] {1});
+        Files.write(source, new byte[] {2});
+        Files.createSymbolicLink(symlink, realFile);
+        
+        Files.move(source, symlink, StandardCopyOption.REPLACE_EXISTING);
+        
+        assertFalse(Files.isSymbolicLink(symlink));
+        assertArrayEquals(new byte[] {2}, Files.readAllBytes(symlink));
+        assertArrayEquals(new byte[] {1}, Files.readAllBytes(realFile));
+        assertFalse(Files.exists(source));
+    }
+    
     @IgnoreIfNoSymlink
     @Test
     public void testMoveSymlink() throws Exception {
@@ -366,6 +401,174 @@ public class MoveTest {
         Files.move(symlink, moveTo);
     }
 
+    @IgnoreIf(FsType.WINDOWS)
+    @Test
+    public void testAtomicMoveOverTargetNeverMissing() throws Exception {
+        assertMoveOverTargetNeverMissing(StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    @Test
+    public void testReplaceExistingMoveOverTargetNeverMissing() throws Exception {
+        //the jdk deletes then renames for REPLACE_EXISTING
+        assumeTrue(root instanceof EphemeralFsPath);
+        assertMoveOverTargetNeverMissing(StandardCopyOption.REPLACE_EXISTING);
+    }
+    
+    private void assertMoveOverTargetNeverMissing(StandardCopyOption option) throws Exception {
+        final Path source = root.resolve("source");
+        final Path target = Files.createFile(root.resolve("target"));
+        final AtomicBoolean done = new AtomicBoolean();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Integer> missing = executor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    int answer = 0;
+                    while(!done.get()) {
+                        if(!Files.exists(target)) {
+                            answer++;
+                        }
+                    }
+                    return answer;
+                }
+            });
+            for(int i = 0; i < 2000; i++) {
+                Files.createFile(source);
+                Files.move(source, target, option);
+            }
+            done.set(true);
+            assertEquals(Integer.valueOf(0), missing.get());
+        } finally {
+            done.set(true);
+            executor.shutdown();
+        }
+    }
+    
+    @Test
+    public void testMoveDirIntoItself() throws Exception {
+        Path dir = root.resolve("dir");
+        Path child = dir.resolve("child");
+        Files.createDirectories(child);
+        
+        try {
+            Files.move(dir, child.resolve("dir"));
+            fail();
+        } catch(FileSystemException e) {
+            //pass
+        }
+        assertTrue(Files.isDirectory(child));
+    }
+    
+    @Test
+    public void testCrossedDirMovesNeverMakeACycle() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for(int i = 0; i < 200; i++) {
+                final Path x = root.resolve("x" + i);
+                final Path y = root.resolve("y" + i);
+                final Path a = Files.createDirectories(x.resolve("a"));
+                final Path b = Files.createDirectories(y.resolve("b"));
+                final CountDownLatch start = new CountDownLatch(1);
+                final AtomicInteger moved = new AtomicInteger();
+                List<Future<?>> futures = new ArrayList<>();
+                //each moves into the other, at most one can succeed
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        start.await();
+                        tryMove(x, b.resolve("x"), moved);
+                        return null;
+                    }
+                }));
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        start.await();
+                        tryMove(y, a.resolve("y"), moved);
+                        return null;
+                    }
+                }));
+                start.countDown();
+                for(Future<?> f : futures) {
+                    f.get();
+                }
+                
+                assertEquals(1, moved.get());
+                //all 4 directories are still reachable from root
+                assertEquals(4, countDirs(x) + countDirs(y));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+    
+    @Test
+    public void testMoveAndCopyWhileOtherDirectoryLocked() throws Exception {
+        //we need to lock a directory
+        assumeTrue(root instanceof EphemeralFsPath);
+        
+        final Path locked = root.resolve("locked");
+        final Path source = root.resolve("source");
+        final Path target = root.resolve("target");
+        Files.createDirectory(locked);
+        Files.createDirectory(source);
+        Files.createDirectory(target);
+        final INode lockedINode = ResolvedPath.resolve((EphemeralFsPath) locked).getTarget();
+        EphemeralFsFileSystem fs = ((EphemeralFsPath) root).fs;
+        
+        //a reader would block anyone taking the file system write lock
+        fs.fsLock.readLock().lock();
+        lockedINode.lockDirectory();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            //moves and copies between other directories don't wait for locked
+            executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    Files.createFile(source.resolve("file"));
+                    Files.move(source.resolve("file"), target.resolve("file"));
+                    Files.copy(target.resolve("file"), source.resolve("copy"));
+                    Files.createDirectory(source.resolve("dir"));
+                    Files.move(source.resolve("dir"), target.resolve("dir"));
+                    Files.move(target.resolve("dir"), target.resolve("renamed"));
+                    return null;
+                }
+            }).get(10, TimeUnit.SECONDS);
+        } finally {
+            lockedINode.unlockDirectory();
+            fs.fsLock.readLock().unlock();
+            executor.shutdown();
+        }
+        assertTrue(Files.exists(target.resolve("file")));
+        assertTrue(Files.exists(source.resolve("copy")));
+        assertTrue(Files.isDirectory(target.resolve("renamed")));
+    }
+    
+    private static void tryMove(Path source, Path target, AtomicInteger moved) throws Exception {
+        try {
+            Files.move(source, target);
+            moved.incrementAndGet();
+        } catch(FileSystemException e) {
+            //the other move won, our target is now inside 
+            //our source, or no longer exists
+        }
+    }
+    
+    private static int countDirs(Path start) throws Exception {
+        if(!Files.exists(start)) {
+            return 0;
+        }
+        final AtomicInteger answer = new AtomicInteger();
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir,
+                    BasicFileAttributes attrs) {
+                answer.incrementAndGet();
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return answer.get();
+    }
     
     private void checkExistence(Path source, Path target) {
         assertFalse(Files.exists(source));
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2015 Sean Bridges. All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ * 
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ * 
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * 
+ * 
+ */
+
+package com.github.sbridges.ephemeralfs;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class OffHeapContentsTest {
+
+    FileSystem fs = EphemeralFsFileSystemBuilder
+            .unixFs()
+            .setStoreContentsOffHeap(true)
+            .build();
+    Path file = fs.getPath("/file");
+    
+    @After
+    public void tearDown() throws Exception {
+        fs.close();
+    }
+    
+    @Test
+    public void testReadWrite() throws Exception {
+        byte[] contents = new byte[FileContents.BLOCK_SIZE * 2 + 13];
+        new Random(42).nextBytes(contents);
+        Files.write(file, contents);
+        assertArrayEquals(contents, Files.readAllBytes(file));
+    }
+    
+    @Test
+    public void testTruncateThenExtend() throws Exception {
+        try(FileChannel channel = FileChannel.open(file, 
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {1, 2, 3, 4}));
+            channel.truncate(2);
+            channel.write(ByteBuffer.wrap(new byte[] {5}), 3);
+        }
+        assertArrayEquals(new byte[] {1, 2, 0, 5}, Files.readAllBytes(file));
+    }
+    
+    @Test
+    public void testDeleteReleasesSpace() throws Exception {
+        long free = fs.getFileStores().iterator().next().getUsableSpace();
+        Files.write(file, new byte[FileContents.BLOCK_SIZE * 3]);
+        Files.delete(file);
+        assertEquals(free, fs.getFileStores().iterator().next().getUsableSpace());
+    }
+    
+    @Test
+    public void testOpenFileReadableAfterDelete() throws Exception {
+        Files.write(file, new byte[] {1, 2, 3});
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            Files.delete(file);
+            ByteBuffer read = ByteBuffer.allocate(3);
+            assertEquals(3, channel.read(read));
+            assertArrayEquals(new byte[] {1, 2, 3}, read.array());
+        }
+    }
+    
+    @Test
+    public void testCloseReleasesOpenFiles() throws Exception {
+        Files.write(file, new byte[FileContents.BLOCK_SIZE + 1]);
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            fs.close();
+            assertEquals(0, channel.size());
+        }
+    }
+    
+    @Test
+    public void testTransferToDoesNotExposeBlocks() throws Exception {
+        byte[] contents = new byte[FileContents.BLOCK_SIZE * 2 + 13];
+        new Random(42).nextBytes(contents);
+        Files.write(file, contents);
+        
+        //a target that keeps what it is given, off heap blocks
+        //are freed later, so it must never be given a block
+        final List<ByteBuffer> kept = new ArrayList<>();
+        final ByteArrayOutputStream written = new ByteArrayOutputStream();
+        WritableByteChannel target = new WritableByteChannel() {
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+            
+            @Override
+            public void close() throws IOException {
+            }
+            
+            @Override
+            public int write(ByteBuffer src) throws IOException {
+                kept.add(src);
+                int answer = src.remaining();
+                byte[] bytes = new byte[answer];
+                src.get(bytes);
+                written.write(bytes);
+                return answer;
+            }
+        };
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            assertEquals(contents.length, channel.transferTo(0, Long.MAX_VALUE, target));
+        }
+        assertArrayEquals(contents, written.toByteArray());
+        assertFalse(kept.isEmpty());
+        for(ByteBuffer buffer : kept) {
+            assertFalse(buffer.isDirect());
+        }
+    }
+}
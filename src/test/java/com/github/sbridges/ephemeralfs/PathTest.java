@@ -65,6 +65,19 @@ public class PathTest {
       assertEquals("", root.getFileSystem().getPath("").getName(0).toString());
     }
 
+    @Test
+    public void testNamesOfResolvedPath() throws Exception {
+        Path resolved = root.resolve("a").resolve(root.getFileSystem().getPath("b", "c"));
+        assertEquals(root.resolve("a").resolve("b").resolve("c"), resolved);
+        assertEquals(root.getNameCount() + 3, resolved.getNameCount());
+        assertEquals("c", resolved.getFileName().toString());
+        assertEquals("b", resolved.getName(root.getNameCount() + 1).toString());
+        assertEquals(root.resolve("a").resolve("b"), resolved.getParent());
+        assertEquals(root.getFileSystem().getPath("a", "b"), 
+                resolved.subpath(root.getNameCount(), root.getNameCount() + 2));
+        assertEquals(resolved, resolved.getParent().resolve(".").resolve("c").normalize());
+    }
+    
     @Test
     public void testToRealPathSimple() throws Exception {
         Path dir = root.resolve("dir");
@@ -62,9 +62,12 @@ package com.github.sbridges.ephemeralfs;
 import static org.junit.Assert.*;
 
 import java.nio.file.FileSystem;
+import java.nio.file.FileSystemLoopException;
 import java.nio.file.Files;
 import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.Before;
 import org.junit.FixMethodOrder;
@@ -358,4 +361,153 @@ public class ResolvedPathTest {
         
     }
     
+    @Test
+    public void testSymlinkChainAtHopLimit() throws Exception {
+        EphemeralFsPath file = root.resolve("file");
+        Files.createFile(file);
+        EphemeralFsPath last = symlinkChain(file, ResolvedPath.MAX_SYMLINK_HOPS);
+        
+        ResolvedPath resolved = ResolvedPath.resolve(last);
+        assertTrue(resolved.hasTarget());
+        assertEquals(resolved.getPath(), file);
+    }
+    
+    @Test
+    public void testSymlinkChainPastHopLimit() throws Exception {
+        EphemeralFsPath file = root.resolve("file");
+        Files.createFile(file);
+        EphemeralFsPath last = symlinkChain(file, ResolvedPath.MAX_SYMLINK_HOPS + 1);
+        
+        try {
+            ResolvedPath.resolve(last);
+            fail();
+        } catch(FileSystemLoopException e) {
+            //pass
+        }
+    }
+    
+    @Test
+    public void testSymlinkLoop() throws Exception {
+        EphemeralFsPath link = root.resolve("link");
+        Files.createSymbolicLink(link, link);
+        
+        try {
+            ResolvedPath.resolve(link.resolve("child"));
+            fail();
+        } catch(FileSystemLoopException e) {
+            //pass
+        }
+        assertTrue(ResolvedPath.resolve(link, true).resolvedToSymbolicLink());
+    }
+    
+    private EphemeralFsPath symlinkChain(EphemeralFsPath target, int length) throws Exception {
+        EphemeralFsPath last = target;
+        for(int i = 0; i < length; i++) {
+            EphemeralFsPath link = root.resolve("link" + i);
+            Files.createSymbolicLink(link, last);
+            last = link;
+        }
+        return last;
+    }
+    
+    @Test
+    public void testCachedResolution() throws Exception {
+        EphemeralFsPath file = root.resolve("dir").resolve("file");
+        Files.createDirectory(file.getParent());
+        Files.createFile(file);
+        
+        ResolvedPath first = ResolvedPath.resolve(file);
+        assertSame(first, ResolvedPath.resolve(file));
+        
+        //adding a sibling does not invalidate
+        Files.createFile(file.resolveSibling("sibling"));
+        assertSame(first, ResolvedPath.resolve(file));
+    }
+    
+    @Test
+    public void testCachedResolutionInvalidatedByDelete() throws Exception {
+        EphemeralFsPath file = root.resolve("dir").resolve("file");
+        Files.createDirectory(file.getParent());
+        Files.createFile(file);
+        
+        assertTrue(ResolvedPath.resolve(file).hasTarget());
+        Files.delete(file);
+        assertFalse(ResolvedPath.resolve(file).hasTarget());
+        Files.createFile(file);
+        assertTrue(ResolvedPath.resolve(file).hasTarget());
+    }
+    
+    @Test
+    public void testCachedResolutionInvalidatedByMovingAncestor() throws Exception {
+        EphemeralFsPath file = root.resolve("a").resolve("b").resolve("file");
+        Files.createDirectories(file.getParent());
+        Files.createFile(file);
+        
+        assertTrue(ResolvedPath.resolve(file).hasTarget());
+        Files.move(root.resolve("a"), root.resolve("moved"));
+        assertFalse(ResolvedPath.resolve(file).hasTarget());
+        assertTrue(ResolvedPath.resolve(root.resolve("moved/b/file")).hasTarget());
+    }
+    
+    @Test
+    public void testCachedResolutionInvalidatedBySymlinkChange() throws Exception {
+        EphemeralFsPath first = root.resolve("first");
+        EphemeralFsPath second = root.resolve("second");
+        EphemeralFsPath link = root.resolve("link");
+        Files.createDirectory(first);
+        Files.createDirectory(second);
+        Files.createFile(first.resolve("file"));
+        Files.createSymbolicLink(link, first);
+        
+        ResolvedPath resolved = ResolvedPath.resolve(link.resolve("file"));
+        assertTrue(resolved.hasTarget());
+        
+        Files.delete(link);
+        Files.createSymbolicLink(link, second);
+        assertFalse(ResolvedPath.resolve(link.resolve("file")).hasTarget());
+        Files.createFile(second.resolve("file"));
+        assertNotSame(
+                resolved.getTarget(), 
+                ResolvedPath.resolve(link.resolve("file")).getTarget());
+    }
+    
+    @Test
+    public void testResolveWhileWriterChangesDirectory() throws Exception {
+        final EphemeralFsPath dir = root.resolve("dir");
+        final EphemeralFsPath stable = dir.resolve("stable");
+        Files.createDirectory(dir);
+        Files.createFile(stable);
+        
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread writer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    for(int i = 0; i < 2000; i++) {
+                        EphemeralFsPath churn = dir.resolve("churn" + (i % 50));
+                        Files.deleteIfExists(churn);
+                        Files.createFile(churn);
+                    }
+                } catch(Throwable t) {
+                    failure.set(t);
+                } finally {
+                    done.set(true);
+                }
+            }
+        };
+        writer.start();
+        
+        //lookups do not take the file system lock, they
+        //must still always see entries the writer is not touching
+        while(!done.get()) {
+            ResolvedPath resolved = ResolvedPath.resolve(stable);
+            assertTrue(resolved.hasTarget());
+            assertTrue(Files.exists(stable));
+            assertTrue(Files.isSameFile(stable, stable));
+        }
+        writer.join();
+        assertNull(failure.get());
+    }
+    
 }
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2015 Sean Bridges. All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ * 
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ * 
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * 
+ * 
+ */
+
+package com.github.sbridges.ephemeralfs;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StreamTest {
+
+    FileSystem fs;
+    Path root;
+    Random random = new Random(42);
+    
+    @Before
+    public void setUp() {
+        fs = EphemeralFsFileSystemBuilder.unixFs().build();
+        root = fs.getRootDirectories().iterator().next();
+    }
+    
+    @After
+    public void tearDown() throws Exception {
+        fs.close();
+    }
+    
+    @Test
+    public void testStreamsAreSpecialized() throws Exception {
+        Path file = root.resolve("file");
+        try(OutputStream out = Files.newOutputStream(file)) {
+            assertTrue(out instanceof EphemeralFsOutputStream);
+        }
+        try(InputStream in = Files.newInputStream(file)) {
+            assertTrue(in instanceof EphemeralFsInputStream);
+        }
+    }
+    
+    @Test
+    public void testReadWrite() throws Exception {
+        Path file = root.resolve("file");
+        byte[] contents = new byte[20000];
+        random.nextBytes(contents);
+        try(OutputStream out = Files.newOutputStream(file)) {
+            out.write(contents[0]);
+            out.write(contents, 1, contents.length - 1);
+        }
+        
+        try(InputStream in = Files.newInputStream(file)) {
+            assertEquals(contents.length, in.available());
+            assertEquals(contents[0] & 0xFF, in.read());
+            assertEquals(10, in.skip(10));
+            byte[] read = new byte[100];
+            assertEquals(100, in.read(read));
+            assertArrayEquals(Arrays.copyOfRange(contents, 11, 111), read);
+            assertEquals(contents.length - 111, in.skip(Long.MAX_VALUE));
+            assertEquals(0, in.available());
+            assertEquals(-1, in.read());
+        }
+    }
+    
+    @Test
+    public void testAppend() throws Exception {
+        Path file = root.resolve("file");
+        Files.write(file, new byte[] {1, 2});
+        try(OutputStream out = Files.newOutputStream(file, StandardOpenOption.APPEND)) {
+            out.write(3);
+        }
+        assertArrayEquals(new byte[] {1, 2, 3}, Files.readAllBytes(file));
+    }
+    
+    @Test(expected = UnsupportedOperationException.class)
+    public void testInputStreamWithWrite() throws Exception {
+        Path file = root.resolve("file");
+        Files.createFile(file);
+        Files.newInputStream(file, StandardOpenOption.WRITE);
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testOutputStreamWithRead() throws Exception {
+        Files.newOutputStream(root.resolve("file"), StandardOpenOption.READ);
+    }
+    
+    @Test
+    public void testReadAllBytes() throws Exception {
+        Path file = root.resolve("file");
+        byte[] contents = new byte[20000];
+        random.nextBytes(contents);
+        Files.write(file, contents);
+        
+        try(EphemeralFsInputStream in = (EphemeralFsInputStream) Files.newInputStream(file)) {
+            assertEquals(5, in.skip(5));
+            assertArrayEquals(Arrays.copyOfRange(contents, 5, contents.length), in.readAllBytes());
+            assertEquals(0, in.readAllBytes().length);
+        }
+    }
+    
+    @Test
+    public void testTransferTo() throws Exception {
+        Path source = root.resolve("source");
+        Path target = root.resolve("target");
+        byte[] contents = new byte[20000];
+        random.nextBytes(contents);
+        Files.write(source, contents);
+        
+        try(EphemeralFsInputStream in = (EphemeralFsInputStream) Files.newInputStream(source);
+            OutputStream out = Files.newOutputStream(target)) {
+            assertEquals(contents.length, in.transferTo(out));
+            assertEquals(-1, in.read());
+        }
+        assertArrayEquals(contents, Files.readAllBytes(target));
+        
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        try(EphemeralFsInputStream in = (EphemeralFsInputStream) Files.newInputStream(source)) {
+            assertEquals(contents.length, in.transferTo(sink));
+        }
+        assertArrayEquals(contents, sink.toByteArray());
+    }
+    
+    @Test
+    public void testTransferToAppendSameFile() throws Exception {
+        Path file = root.resolve("file");
+        byte[] contents = new byte[5000];
+        random.nextBytes(contents);
+        Files.write(file, contents);
+        
+        try(EphemeralFsInputStream in = (EphemeralFsInputStream) Files.newInputStream(file);
+            OutputStream out = Files.newOutputStream(file, StandardOpenOption.APPEND)) {
+            assertEquals(contents.length, in.transferTo(out));
+        }
+        byte[] expected = Arrays.copyOf(contents, contents.length * 2);
+        System.arraycopy(contents, 0, expected, contents.length, contents.length);
+        assertArrayEquals(expected, Files.readAllBytes(file));
+    }
+}
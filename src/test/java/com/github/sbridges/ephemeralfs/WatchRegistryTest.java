@@ -0,0 +1,195 @@
+/*
+ * Copyright 2015 Sean Bridges. All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ * 
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ * 
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * 
+ * 
+ */
+
+package com.github.sbridges.ephemeralfs;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class WatchRegistryTest {
+
+    EphemeralFsFileSystem fs;
+    EphemeralFsPath dir;
+    EphemeralFsPath file;
+    
+    @Before
+    public void setUp() throws Exception {
+        fs = (EphemeralFsFileSystem) EphemeralFsFileSystemBuilder.unixFs().build();
+        dir = fs.getPath("/dir");
+        file = dir.resolve("file");
+        Files.createDirectory(dir);
+        Files.createFile(file);
+    }
+    
+    @After
+    public void tearDown() throws Exception {
+        fs.close();
+    }
+    
+    @Test
+    public void testNotWatched() throws Exception {
+        assertFalse(iNode(dir).isWatched());
+        assertFalse(iNode(file).hasWatchedParent());
+    }
+    
+    @Test
+    public void testCancel() throws Exception {
+        try(WatchService service = fs.newWatchService()) {
+            WatchKey first = dir.register(service, StandardWatchEventKinds.ENTRY_MODIFY);
+            WatchKey second = dir.register(service, StandardWatchEventKinds.ENTRY_CREATE);
+            assertTrue(iNode(dir).isWatched());
+            assertTrue(iNode(file).hasWatchedParent());
+            assertFalse(iNode(dir).hasWatchedParent());
+            
+            first.cancel();
+            first.cancel();
+            assertTrue(iNode(dir).isWatched());
+            second.cancel();
+            assertFalse(iNode(dir).isWatched());
+            assertFalse(iNode(file).hasWatchedParent());
+        }
+    }
+    
+    @Test
+    public void testCloseService() throws Exception {
+        WatchService service = fs.newWatchService();
+        WatchKey key = dir.register(service, StandardWatchEventKinds.ENTRY_MODIFY);
+        assertTrue(iNode(dir).isWatched());
+        service.close();
+        assertFalse(key.isValid());
+        assertFalse(iNode(dir).isWatched());
+    }
+    
+    @Test
+    public void testRegisterWithClosedService() throws Exception {
+        WatchService service = fs.newWatchService();
+        service.close();
+        try {
+            dir.register(service, StandardWatchEventKinds.ENTRY_MODIFY);
+            fail();
+        } catch(ClosedWatchServiceException e) {
+            //pass
+        }
+        assertFalse(iNode(dir).isWatched());
+    }
+    
+    @Test
+    public void testRegisterRacingClose() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            for(int i = 0; i < 2000; i++) {
+                final WatchService service = fs.newWatchService();
+                Future<?> registered = executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        try {
+                            dir.register(service, StandardWatchEventKinds.ENTRY_MODIFY);
+                        } catch(ClosedWatchServiceException e) {
+                            //lost the race
+                        }
+                        return null;
+                    }
+                });
+                service.close();
+                registered.get();
+                assertFalse(iNode(dir).isWatched());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+    
+    @Test
+    public void testHardLinkInWatchedDirectory() throws Exception {
+        EphemeralFsPath other = fs.getPath("/other");
+        Files.createDirectory(other);
+        Files.createLink(other.resolve("link"), file);
+        try(WatchService service = fs.newWatchService()) {
+            other.register(service, StandardWatchEventKinds.ENTRY_MODIFY);
+            assertTrue(iNode(file).hasWatchedParent());
+        }
+        assertFalse(iNode(file).hasWatchedParent());
+    }
+    
+    @Test
+    public void testGetNameWithHardLinks() throws Exception {
+        EphemeralFsPath link = dir.resolve("link");
+        Files.createLink(link, file);
+        INode directory = iNode(dir);
+        INode target = iNode(file);
+        
+        assertEquals(link.getFileName(), directory.getName(target, link.getFileName()));
+        assertEquals(file.getFileName(), directory.getName(target, file.getFileName()));
+        assertNotNull(directory.getName(target));
+        assertNull(iNode(fs.getPath("/")).getName(target));
+        
+        Files.delete(file);
+        assertEquals(link.getFileName(), directory.getName(target));
+        Files.delete(link);
+        assertNull(directory.getName(target));
+    }
+    
+    @Test
+    public void testModifyAfterRenameUsesCurrentName() throws Exception {
+        try(WatchService service = fs.newWatchService();
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            EphemeralFsPath renamed = dir.resolve("renamed");
+            Files.move(file, renamed);
+            WatchKey key = dir.register(service, StandardWatchEventKinds.ENTRY_MODIFY);
+            channel.write(ByteBuffer.wrap(new byte[] {1}));
+            
+            assertSame(key, service.take());
+            List<WatchEvent<?>> events = key.pollEvents();
+            assertEquals(1, events.size());
+            assertEquals(renamed.getFileName(), events.get(0).context());
+        }
+    }
+    
+    private INode iNode(EphemeralFsPath path) throws Exception {
+        return ResolvedPath.resolve(path).getTarget();
+    }
+}
@@ -37,6 +37,8 @@ import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -821,6 +823,62 @@ public class WindowsFsPathTest {
         }
     }
     
+    @Test
+    public void testCaseInsensitiveHashKey() throws Exception {
+        Path upper = toPath("C:\\Dir\\FILE");
+        Path lower = toPath("c:\\dir\\file");
+        assertEquals(upper.hashCode(), lower.hashCode());
+        assertEquals(upper.hashCode(), upper.hashCode());
+        
+        Set<Path> paths = new HashSet<>();
+        paths.add(upper);
+        assertTrue(paths.contains(lower));
+        assertFalse(paths.contains(toPath("c:\\dir\\other")));
+    }
+    
+    @Test
+    public void testFileNameKeyReused() throws Exception {
+        EphemeralFsPath path = (EphemeralFsPath) toPath("C:\\Dir\\FILE");
+        FileName fileName = path.toFileName();
+        assertSame(fileName, path.toFileName());
+        assertSame(fileName, path.getFileName().toFileName());
+        assertEquals("file", fileName.toString());
+        assertEquals("FILE", fileName.getPath().toString());
+    }
+    
+    @Test
+    public void testMaxPathLengthInSubDirectory() throws Exception {
+        Path dir = root.resolve("dir");
+        Files.createDirectories(dir);
+        //the full path is exactly 260 characters
+        char[] chars = new char[260 - dir.toString().length() - 1];
+        Arrays.fill(chars, 'a');
+        Path file = dir.resolve(new String(chars));
+        assertEquals(260, file.toString().length());
+        Files.createFile(file);
+        Files.delete(file);
+        
+        Path tooLong = dir.resolve(new String(chars) + "a");
+        try {
+            Files.createFile(tooLong);
+            fail();
+        } catch(FileSystemException e) {
+            //pass
+        }
+        
+        //moving the directory changes the path length
+        Files.createFile(file);
+        Path moved = root.resolve("dir2");
+        Files.move(dir, moved);
+        try {
+            Files.createFile(moved.resolve(new String(chars)));
+            fail();
+        } catch(FileSystemException e) {
+            //pass
+        }
+        Files.createFile(moved.resolve(new String(chars, 0, chars.length - 1)));
+    }
+    
     FileSystem getFileSystem() {
         return root.getFileSystem();
     }